@@ -0,0 +1,137 @@
+package com.faforever.iceadapter.gpgnet;
+
+import com.google.common.io.LittleEndianDataInputStream;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Reading GPGNet messages: FaDataInputStream with the reused buffer and ASCII fast path vs the previous decoding
+ * (a fresh array per string, the UTF-8 decoder and two chained replaces), plus writing them via FaDataOutputStream
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class GpgNetStreamBenchmark {
+
+    public enum Content {
+        ASCII,
+        ESCAPED,
+        UTF8
+    }
+
+    @Param({"ASCII", "ESCAPED", "UTF8"})
+    private Content content;
+
+    private String command;
+    private Object[] args;
+    private FaDataInputStream faDataInputStream;
+    private LittleEndianDataInputStream legacyInputStream;
+    private FaDataOutputStream faDataOutputStream;
+
+    @Setup
+    public void setup() {
+        command = content == Content.ASCII ? "GameOption" : "Chat";
+        args = switch (content) {
+            case ASCII -> new Object[] {"Victory", "demoralization", 4711};
+            case ESCAPED -> new Object[] {"gl hf/nsee you/tin the game", "all", 4711};
+            case UTF8 -> new Object[] {"Glück auf, ça va? Привет", "all", 4711};
+        };
+
+        byte[] message = encode(command, args);
+        faDataInputStream = new FaDataInputStream(new RepeatingInputStream(message));
+        legacyInputStream = new LittleEndianDataInputStream(new BufferedInputStream(new RepeatingInputStream(message)));
+        faDataOutputStream = new FaDataOutputStream(OutputStream.nullOutputStream());
+    }
+
+    @Benchmark
+    public List<Object> read() throws IOException {
+        faDataInputStream.readString();
+        return faDataInputStream.readChunks();
+    }
+
+    @Benchmark
+    public List<Object> readLegacy() throws IOException {
+        readLegacyString();
+        int numberOfChunks = legacyInputStream.readInt();
+        List<Object> chunks = new ArrayList<>(numberOfChunks);
+        for (int chunkNumber = 0; chunkNumber < numberOfChunks; chunkNumber++) {
+            if (legacyInputStream.read() == FaDataOutputStream.FIELD_TYPE_INT) {
+                chunks.add(legacyInputStream.readInt());
+            } else {
+                chunks.add(readLegacyString().replace("/t", "\t").replace("/n", "\n"));
+            }
+        }
+        return chunks;
+    }
+
+    private String readLegacyString() throws IOException {
+        byte[] buffer = new byte[legacyInputStream.readInt()];
+        legacyInputStream.readFully(buffer);
+        return new String(buffer, StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public void write() throws IOException {
+        faDataOutputStream.writeMessage(command, args);
+        faDataOutputStream.flush();
+    }
+
+    /**
+     * Encodes the message as FA sends it: a string with the command, then the number of chunks and the chunks
+     */
+    private static byte[] encode(String command, Object[] args) {
+        ByteBuffer buffer = ByteBuffer.allocate(1024).order(ByteOrder.LITTLE_ENDIAN);
+        putString(buffer, command);
+        buffer.putInt(args.length);
+        for (Object arg : args) {
+            if (arg instanceof Integer i) {
+                buffer.put((byte) FaDataOutputStream.FIELD_TYPE_INT).putInt(i);
+            } else {
+                putString(buffer.put((byte) FaDataOutputStream.FIELD_TYPE_STRING), (String) arg);
+            }
+        }
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    private static void putString(ByteBuffer buffer, String string) {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        buffer.putInt(bytes.length).put(bytes);
+    }
+
+    /**
+     * Endlessly repeats one message, so the readers never run dry
+     */
+    private static class RepeatingInputStream extends InputStream {
+        private final byte[] data;
+        private int position = 0;
+
+        RepeatingInputStream(byte[] data) {
+            this.data = data;
+        }
+
+        @Override
+        public int read() {
+            int b = data[position] & 0xFF;
+            position = (position + 1) % data.length;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            int length = Math.min(len, data.length - position);
+            System.arraycopy(data, position, b, off, length);
+            position = (position + length) % data.length;
+            return length;
+        }
+    }
+}
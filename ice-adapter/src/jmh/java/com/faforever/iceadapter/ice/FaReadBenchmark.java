@@ -0,0 +1,147 @@
+package com.faforever.iceadapter.ice;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Reading FA packets of all peers of a game: a blocking listener thread per peer vs one selector thread, see
+ * FaSocketSelector and --selector-data-plane
+ * Every operation sends one packet to each peer's socket via loopback and waits until all of them have been read.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FaReadBenchmark {
+
+    private static final long LOSS_TIMEOUT = TimeUnit.SECONDS.toNanos(1);
+
+    public enum DataPlane {
+        THREADED,
+        SELECTOR
+    }
+
+    @Param({"1", "4", "12"})
+    private int peers;
+
+    @Param({"THREADED", "SELECTOR"})
+    private DataPlane dataPlane;
+
+    private final AtomicLong received = new AtomicLong();
+    private final List<InetSocketAddress> faAddresses = new ArrayList<>();
+    private final List<Thread> readers = new ArrayList<>();
+    private final List<AutoCloseable> closeables = new ArrayList<>();
+    private final byte[] game = new byte[128];
+    private DatagramSocket gameSocket;
+    private DatagramPacket gamePacket;
+    private long expected;
+
+    @Setup
+    public void setup() throws IOException {
+        gameSocket = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+        gamePacket = new DatagramPacket(game, game.length);
+        if (dataPlane == DataPlane.THREADED) {
+            setupThreaded();
+        } else {
+            setupSelector();
+        }
+    }
+
+    private void setupThreaded() throws IOException {
+        for (int i = 0; i < peers; i++) {
+            DatagramSocket socket = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+            closeables.add(socket);
+            faAddresses.add((InetSocketAddress) socket.getLocalSocketAddress());
+            readers.add(Thread.ofPlatform().daemon().start(() -> {
+                byte[] data = new byte[65536];
+                DatagramPacket packet = new DatagramPacket(
+                        data, PeerIceModule.FA_DATA_OFFSET, data.length - PeerIceModule.FA_DATA_OFFSET);
+                while (!socket.isClosed()) {
+                    try {
+                        socket.receive(packet);
+                        received.incrementAndGet();
+                    } catch (IOException e) {
+                        return;
+                    }
+                }
+            }));
+        }
+    }
+
+    private void setupSelector() throws IOException {
+        Selector selector = Selector.open();
+        closeables.add(selector);
+        for (int i = 0; i < peers; i++) {
+            DatagramChannel channel = DatagramChannel.open();
+            channel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            channel.configureBlocking(false);
+            channel.register(selector, SelectionKey.OP_READ);
+            closeables.add(channel);
+            faAddresses.add((InetSocketAddress) channel.getLocalAddress());
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(65536);
+        readers.add(Thread.ofPlatform().daemon().start(() -> {
+            try {
+                while (selector.isOpen()) {
+                    selector.select(key -> {
+                        try {
+                            while (true) {
+                                buffer.clear().position(PeerIceModule.FA_DATA_OFFSET);
+                                if (((DatagramChannel) key.channel()).receive(buffer) == null) {
+                                    return;
+                                }
+                                received.incrementAndGet();
+                            }
+                        } catch (IOException e) {
+                            key.cancel();
+                        }
+                    });
+                }
+            } catch (Exception e) {
+                // closed
+            }
+        }));
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        gameSocket.close();
+        for (AutoCloseable closeable : closeables) {
+            closeable.close();
+        }
+        for (Thread reader : readers) {
+            reader.join(1000);
+        }
+    }
+
+    @Benchmark
+    public long readAll() throws IOException {
+        expected += peers;
+        for (InetSocketAddress address : faAddresses) {
+            gamePacket.setSocketAddress(address);
+            gameSocket.send(gamePacket);
+        }
+        long deadline = System.nanoTime() + LOSS_TIMEOUT;
+        while (received.get() < expected) {
+            if (System.nanoTime() > deadline) {
+                // Lost on loopback, rare but would stall the benchmark forever
+                expected = received.get();
+                break;
+            }
+            Thread.onSpinWait();
+        }
+        return expected;
+    }
+}
@@ -0,0 +1,48 @@
+package com.faforever.iceadapter.ice;
+
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Preparing a FA packet for ICE: copying it behind a fresh prefix (as before) vs writing the prefix into the headroom
+ * of the receive buffer and reusing the packet, see PeerIceModule.onFaDataReceived
+ * The send itself is left out, it is the same for both. Run with -PjmhProfilers=gc to see the allocations.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ForwardingBenchmark {
+
+    @Param({"64", "512", "1400"})
+    private int length;
+
+    // Payload at offset 1, as received by the FA listener
+    private final byte[] buffer = new byte[65536];
+    private final DatagramPacket forwardPacket = new DatagramPacket(new byte[0], 0);
+    private final InetSocketAddress remoteAddress = new InetSocketAddress(InetAddress.getLoopbackAddress(), 6112);
+
+    @Setup
+    public void setup() {
+        ThreadLocalRandom.current().nextBytes(buffer);
+    }
+
+    @Benchmark
+    public DatagramPacket copy() {
+        byte[] data = new byte[length + 1];
+        data[0] = 'd';
+        System.arraycopy(buffer, 1, data, 1, length);
+        return new DatagramPacket(data, 0, data.length, remoteAddress.getAddress(), remoteAddress.getPort());
+    }
+
+    @Benchmark
+    public DatagramPacket headroom() {
+        buffer[0] = 'd';
+        forwardPacket.setData(buffer, 0, length + 1);
+        forwardPacket.setSocketAddress(remoteAddress);
+        return forwardPacket;
+    }
+}
@@ -0,0 +1,89 @@
+package com.faforever.iceadapter.ice;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Writing and reading the header of a sequenced data packet: the regular 's' + int vs the compact type + varint of
+ * --compact-framing, see CompactFraming
+ * The sequence numbers grow by one per packet like on a connection, starting at different magnitudes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FramingBenchmark {
+
+    private static final int PACKETS = 256;
+
+    @Param({"0", "100000", "2000000000"})
+    private int firstSequence;
+
+    private final byte[] data = new byte[PACKETS * 8];
+    private final byte[] regular = new byte[PACKETS * 8];
+    private final byte[] compact = new byte[PACKETS * 8];
+    private int compactEnd;
+
+    @Setup
+    public void setup() {
+        for (int i = 0; i < PACKETS; i++) {
+            writeRegular(regular, i * 5, firstSequence + i);
+        }
+        int offset = 0;
+        for (int i = 0; i < PACKETS; i++) {
+            offset = writeCompact(compact, offset, firstSequence + i);
+        }
+        compactEnd = offset;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PACKETS)
+    public int writeRegular() {
+        for (int i = 0; i < PACKETS; i++) {
+            writeRegular(data, i * 5, firstSequence + i);
+        }
+        return PACKETS * 5;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PACKETS)
+    public int writeCompact() {
+        int offset = 0;
+        for (int i = 0; i < PACKETS; i++) {
+            offset = writeCompact(data, offset, firstSequence + i);
+        }
+        return offset;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PACKETS)
+    public int readRegular() {
+        int sum = 0;
+        for (int i = 0; i < PACKETS; i++) {
+            sum += PeerConnectivityCheckerModule.readInt(regular, i * 5 + 1);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PACKETS)
+    public long readCompact() {
+        long sum = 0;
+        int offset = 0;
+        while (offset < compactEnd) {
+            long sequence = CompactFraming.readVarint(compact, offset + 1, compactEnd);
+            sum += sequence;
+            offset += 1 + CompactFraming.varintLength(sequence);
+        }
+        return sum;
+    }
+
+    private static void writeRegular(byte[] data, int offset, int sequence) {
+        data[offset] = PeerIceModule.SEQUENCED_DATA_PREFIX;
+        PeerConnectivityCheckerModule.writeInt(data, offset + 1, sequence);
+    }
+
+    private static int writeCompact(byte[] data, int offset, int sequence) {
+        data[offset] = CompactFraming.SEQUENCED_DATA;
+        return CompactFraming.writeVarint(data, offset + 1, Integer.toUnsignedLong(sequence));
+    }
+}
@@ -0,0 +1,79 @@
+package com.faforever.iceadapter.ice;
+
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Cost of the XOR parity of --fec-group-size per group: building the parity on send, keeping the received payloads
+ * and rebuilding a lost packet on receive, see ParityEncoder and ParityDecoder
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ParityBenchmark {
+
+    @Param({"2", "4", "8"})
+    private int groupSize;
+
+    @Param({"64", "512", "1400"})
+    private int length;
+
+    @Param({"false", "true"})
+    private boolean compactFraming;
+
+    private byte[][] payloads;
+    private ParityEncoder encoder;
+    private ParityDecoder decoder;
+    private byte[] parity;
+    private int parityLength;
+    private int sequence = 0;
+    private int receiveSequence = 0;
+
+    @Setup
+    public void setup() {
+        payloads = new byte[groupSize][length];
+        for (byte[] payload : payloads) {
+            ThreadLocalRandom.current().nextBytes(payload);
+        }
+        encoder = new ParityEncoder(groupSize);
+        decoder = new ParityDecoder();
+
+        // One parity packet to recover from, the group starts at sequence 0
+        for (int i = 0; i < groupSize; i++) {
+            parityLength = encoder.add(i, payloads[i], 0, length, compactFraming);
+        }
+        parity = new byte[parityLength];
+        System.arraycopy(encoder.getParity(), encoder.getParityOffset(), parity, 0, parityLength);
+        sequence = groupSize;
+    }
+
+    @Benchmark
+    public void encodeGroup(Blackhole blackhole) {
+        for (int i = 0; i < groupSize; i++) {
+            blackhole.consume(encoder.add(sequence++, payloads[i], 0, length, compactFraming));
+        }
+    }
+
+    @Benchmark
+    public void receiveGroup() {
+        // A fresh group each time, like on a connection
+        for (int i = 0; i < groupSize; i++) {
+            decoder.onDataReceived(receiveSequence++, payloads[i], 0, length);
+        }
+    }
+
+    @Benchmark
+    public Optional<ParityDecoder.RecoveredPacket> recoverLostPacket() {
+        // All but the last packet of the group arrived
+        decoder.reset();
+        for (int i = 0; i < groupSize - 1; i++) {
+            decoder.onDataReceived(i, payloads[i], 0, length);
+        }
+        return compactFraming
+                ? decoder.onCompactParityReceived(parity, parityLength)
+                : decoder.onParityReceived(parity, parityLength);
+    }
+}
@@ -0,0 +1,82 @@
+package com.faforever.iceadapter.telemetry;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Encoding telemetry messages as JSON text vs CBOR (--compact-telemetry), with the mappers configured like in
+ * TelemetryDebugger, and creating their ids via MessageIds vs UUID.randomUUID()
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TelemetryEncodingBenchmark {
+
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+    private final ObjectMapper cborMapper = new ObjectMapper(new CBORFactory()).registerModule(new JavaTimeModule());
+
+    private OutgoingMessageV1 connectivity;
+    private OutgoingMessageV1 statistics;
+
+    @Setup
+    public void setup() {
+        connectivity = new UpdatePeerConnectivity(
+                MessageIds.next(), 4711, 42.5f, Instant.now(), 40.0f, 61.2f, 88.9f, 3.4f, 0.01f);
+        statistics = new UpdatePeerStatistics(
+                MessageIds.next(),
+                4711,
+                120_000,
+                9_600_000,
+                118_000,
+                9_400_000,
+                12,
+                3,
+                0,
+                0,
+                0,
+                1,
+                2_400,
+                2_350,
+                30_000,
+                40,
+                5_000,
+                12.5f,
+                180_000);
+    }
+
+    @Benchmark
+    public String connectivityJson() throws JsonProcessingException {
+        return objectMapper.writeValueAsString(connectivity);
+    }
+
+    @Benchmark
+    public byte[] connectivityCbor() throws JsonProcessingException {
+        return cborMapper.writeValueAsBytes(connectivity);
+    }
+
+    @Benchmark
+    public String statisticsJson() throws JsonProcessingException {
+        return objectMapper.writeValueAsString(statistics);
+    }
+
+    @Benchmark
+    public byte[] statisticsCbor() throws JsonProcessingException {
+        return cborMapper.writeValueAsBytes(statistics);
+    }
+
+    @Benchmark
+    public UUID messageId() {
+        return MessageIds.next();
+    }
+
+    @Benchmark
+    public UUID randomMessageId() {
+        return UUID.randomUUID();
+    }
+}
@@ -3,14 +3,18 @@ package com.faforever.iceadapter;
 import static com.faforever.iceadapter.debug.Debug.debug;
 
 import com.faforever.iceadapter.debug.Debug;
+import com.faforever.iceadapter.debug.EventJournal;
 import com.faforever.iceadapter.gpgnet.GPGNetServer;
 import com.faforever.iceadapter.gpgnet.GameState;
+import com.faforever.iceadapter.gpgnet.LobbyInitMode;
 import com.faforever.iceadapter.ice.GameSession;
 import com.faforever.iceadapter.ice.PeerIceModule;
 import com.faforever.iceadapter.rpc.RPCService;
 import com.faforever.iceadapter.util.ExecutorHolder;
 import com.faforever.iceadapter.util.LockUtil;
 import com.faforever.iceadapter.util.TrayIcon;
+import java.nio.file.Path;
+import java.util.Optional;
 import java.util.concurrent.*;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -57,6 +61,12 @@ public class IceAdapter implements Callable<Integer>, AutoCloseable, FafRpcCallb
         Debug.ENABLE_DEBUG_WINDOW = iceOptions.isDebugWindow();
         Debug.ENABLE_INFO_WINDOW = iceOptions.isInfoWindow();
         Debug.init();
+        EventJournal.init(
+                Optional.ofNullable(iceOptions.getEventJournal()).map(Path::of).orElse(null),
+                VERSION,
+                iceOptions.getId(),
+                iceOptions.getGameId(),
+                iceOptions.getLogin());
 
         TrayIcon.create();
 
@@ -153,6 +163,7 @@ public class IceAdapter implements Callable<Integer>, AutoCloseable, FafRpcCallb
         INSTANCE.gpgNetServer.close();
         INSTANCE.rpcService.close();
         Debug.close();
+        EventJournal.close();
         TrayIcon.close();
 
         INSTANCE.executor.shutdown();
@@ -166,6 +177,10 @@ public class IceAdapter implements Callable<Integer>, AutoCloseable, FafRpcCallb
         gpgNetServer.sendToGpgNet(header, args);
     }
 
+    public void setLobbyInitMode(LobbyInitMode lobbyInitMode) {
+        gpgNetServer.setLobbyInitMode(lobbyInitMode);
+    }
+
     public static int getId() {
         return INSTANCE.iceOptions.getId();
     }
@@ -186,6 +201,14 @@ public class IceAdapter implements Callable<Integer>, AutoCloseable, FafRpcCallb
         return INSTANCE.iceOptions.getTelemetryServer();
     }
 
+    public static boolean isCompactTelemetry() {
+        return INSTANCE.iceOptions.isCompactTelemetry();
+    }
+
+    public static int getTelemetryRecordingSize() {
+        return INSTANCE.iceOptions.getTelemetryRecordingSize();
+    }
+
     public static int getPingCount() {
         return INSTANCE.iceOptions.getPingCount();
     }
@@ -194,6 +217,62 @@ public class IceAdapter implements Callable<Integer>, AutoCloseable, FafRpcCallb
         return INSTANCE.iceOptions.getAcceptableLatency();
     }
 
+    public static double getAcceptablePacketLoss() {
+        return INSTANCE.iceOptions.getAcceptablePacketLoss();
+    }
+
+    public static int getIceServerProbeInterval() {
+        return INSTANCE.iceOptions.getIceServerProbeInterval();
+    }
+
+    public static int getHarvesterDeadline() {
+        return INSTANCE.iceOptions.getHarvesterDeadline();
+    }
+
+    public static boolean isWaitForAllHarvesters() {
+        return INSTANCE.iceOptions.isWaitForAllHarvesters();
+    }
+
+    public static double getPhiThreshold() {
+        return INSTANCE.iceOptions.getPhiThreshold();
+    }
+
+    public static boolean isIceRestart() {
+        return INSTANCE.iceOptions.isIceRestart();
+    }
+
+    public static int getBackupPairs() {
+        return INSTANCE.iceOptions.getBackupPairs();
+    }
+
+    public static boolean isPacketDuplication() {
+        return INSTANCE.iceOptions.isPacketDuplication();
+    }
+
+    public static float getPacketDuplicationLoss() {
+        return INSTANCE.iceOptions.getPacketDuplicationLoss();
+    }
+
+    public static int getFecGroupSize() {
+        return INSTANCE.iceOptions.getFecGroupSize();
+    }
+
+    public static long getCoalescingWindow() {
+        return INSTANCE.iceOptions.getCoalescingWindow();
+    }
+
+    public static boolean isCompactFraming() {
+        return INSTANCE.iceOptions.isCompactFraming();
+    }
+
+    public static int getHarvestCacheSize() {
+        return INSTANCE.iceOptions.getHarvestCacheSize();
+    }
+
+    public static boolean isSelectorDataPlane() {
+        return INSTANCE.iceOptions.isSelectorDataPlane();
+    }
+
     public static Executor getExecutor() {
         return INSTANCE.executor;
     }
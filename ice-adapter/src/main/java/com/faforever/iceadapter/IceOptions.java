@@ -48,7 +48,7 @@ public class IceOptions {
     @Option(
             names = "--ping-count",
             defaultValue = "1",
-            description = "number of times to ping each turn server to determine latency")
+            description = "number of STUN binding requests to send to each turn server to determine latency")
     private int pingCount;
 
     @Option(
@@ -57,9 +57,115 @@ public class IceOptions {
             description = "number of times to ping each turn server to determine latency")
     private double acceptableLatency;
 
+    @Option(
+            names = "--acceptable-packet-loss",
+            defaultValue = "0.1",
+            description = "fraction of lost STUN requests above which a turn server is not used")
+    private double acceptablePacketLoss;
+
+    @Option(
+            names = "--ice-server-probe-interval",
+            defaultValue = "60000",
+            description = "interval in ms in which to re-measure and re-rank the turn servers (0 to disable)")
+    private int iceServerProbeInterval;
+
+    @Option(
+            names = "--harvester-deadline",
+            defaultValue = "3000",
+            description = "time in ms a single STUN/TURN server may take to gather candidates before it is skipped")
+    private int harvesterDeadline;
+
+    @Option(
+            names = "--wait-for-all-harvesters",
+            description = "wait for all STUN/TURN servers instead of offering candidates once host, srflx and relay "
+                    + "candidates are available")
+    private boolean waitForAllHarvesters;
+
+    @Option(
+            names = "--phi-threshold",
+            defaultValue = "3.0",
+            description = "suspicion level (phi accrual of the echo replies) of a silent peer above which the "
+                    + "connection is aborted and reconnected, never before 2 s of silence, at 3 after about 2.6 s "
+                    + "without reply. Higher values detect failures later but with fewer false positives")
+    private double phiThreshold;
+
+    @Option(
+            names = "--ice-restart",
+            description = "negotiate a new connection in parallel when the connection degrades (if the peer supports "
+                    + "it as well), the current connection keeps forwarding until the new one is established")
+    private boolean iceRestart;
+
+    @Option(
+            names = "--backup-pairs",
+            defaultValue = "0",
+            description = "number of additional validated candidate pairs to keep alive for instant failover if the "
+                    + "peer supports it as well (0 to disable)")
+    private int backupPairs;
+
+    @Option(
+            names = "--packet-duplication",
+            defaultValue = "false",
+            description = "send game packets twice to peers with high packet loss if they support it as well")
+    private boolean packetDuplication;
+
+    @Option(
+            names = "--packet-duplication-loss",
+            defaultValue = "0.02",
+            description = "echo packet loss (0 to 1) from which packets are duplicated, if enabled")
+    private float packetDuplicationLoss;
+
+    @Option(
+            names = "--fec-group-size",
+            defaultValue = "0",
+            description = "number of game packets protected by one parity packet if the peer supports it as well, "
+                    + "a single lost packet per group is rebuilt (0 to disable, up to 32)")
+    private int fecGroupSize;
+
+    @Option(
+            names = "--coalescing-window",
+            defaultValue = "0",
+            description = "microseconds packets from the game are held back to send them together in one datagram "
+                    + "if the peer supports it as well (0 to disable)")
+    private long coalescingWindow;
+
+    @Option(
+            names = "--compact-framing",
+            defaultValue = "false",
+            description = "use compact headers with varints for packets to peers that support the same version")
+    private boolean compactFraming;
+
+    @Option(
+            names = "--harvest-cache-size",
+            defaultValue = "0",
+            description = "number of agents per game session to gather candidates for in advance (0 to disable)")
+    private int harvestCacheSize;
+
+    @Option(
+            names = "--selector-data-plane",
+            description = "read the game sockets of all peers on a single NIO selector instead of a thread per peer")
+    private boolean selectorDataPlane;
+
     @Option(
             names = "--telemetry-server",
             defaultValue = "wss://ice-telemetry.faforever.com",
             description = "Telemetry server to connect to")
     private String telemetryServer;
+
+    @Option(
+            names = "--compact-telemetry",
+            defaultValue = "false",
+            description = "offer CBOR instead of JSON to the telemetry server, used if the server accepts it")
+    private boolean compactTelemetry;
+
+    @Option(
+            names = "--telemetry-recording-size",
+            defaultValue = "16",
+            description = "MiB of telemetry recorded to LOG_DIR, replayed to the telemetry server after an outage "
+                    + "(0 to disable)")
+    private int telemetryRecordingSize;
+
+    @Option(
+            names = "--event-journal",
+            description = "file to record RPC calls, GPGNet messages and ICE states to, for replaying the session")
+    private String eventJournal;
 }
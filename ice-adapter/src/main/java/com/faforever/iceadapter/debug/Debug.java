@@ -2,6 +2,8 @@ package com.faforever.iceadapter.debug;
 
 import com.faforever.iceadapter.IceAdapter;
 import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Path;
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import lombok.extern.slf4j.Slf4j;
 
@@ -31,8 +33,15 @@ public class Debug {
     }
 
     public static void init() {
-        telemetryDebugger =
-                new TelemetryDebugger(IceAdapter.getTelemetryServer(), IceAdapter.getGameId(), IceAdapter.getId());
+        // Recorded next to the log files, see logback.xml
+        Path recordingDirectory = Optional.ofNullable(System.getenv("LOG_DIR")).map(Path::of).orElse(null);
+        telemetryDebugger = new TelemetryDebugger(
+                IceAdapter.getTelemetryServer(),
+                IceAdapter.getGameId(),
+                IceAdapter.getId(),
+                IceAdapter.isCompactTelemetry(),
+                recordingDirectory,
+                IceAdapter.getTelemetryRecordingSize() * 1024L * 1024L);
 
         // Debugger window is started and set to debugFuture when either window is requested as the info window can be
         // used to open the debug window
@@ -67,10 +76,25 @@ public class Debug {
         }
     }
 
+    /**
+     * @return the counters of the telemetry queue, empty if telemetry is not running
+     */
+    public static Optional<TelemetryMessageQueue.Snapshot> getTelemetryStatistics() {
+        return Optional.ofNullable(telemetryDebugger).map(TelemetryDebugger::getStatistics);
+    }
+
     public static Debugger debug() {
         return debugFacade;
     }
 
+    public static LatencyHistogram getConnectTimes() {
+        return debugFacade.getConnectTimes();
+    }
+
+    public static LatencyHistogram getHarvestTimes() {
+        return debugFacade.getHarvestTimes();
+    }
+
     public static boolean isJavaFxSupported() {
         try {
             Debug.class.getClassLoader().loadClass("javafx.application.Application");
@@ -7,10 +7,19 @@ import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CopyOnWriteArrayList;
+import lombok.Getter;
 
 public class DebugFacade implements Debugger {
     private final List<Debugger> debuggers = new CopyOnWriteArrayList<>();
 
+    // Time from starting the connectivity checks until ICE completed, for all peers
+    @Getter
+    private final LatencyHistogram connectTimes = new LatencyHistogram(50, 100, 250, 500, 1000, 2500, 5000, 15000);
+
+    // Time each STUN/TURN harvester took to gather its candidates
+    @Getter
+    private final LatencyHistogram harvestTimes = new LatencyHistogram(50, 100, 250, 500, 1000, 2500, 5000);
+
     public void add(Debugger debugger) {
         debuggers.add(debugger);
     }
@@ -64,6 +73,12 @@ public class DebugFacade implements Debugger {
         debuggers.forEach(d -> d.peerConnectivityUpdate(peer));
     }
 
+    @Override
+    public void peerConnected(Peer peer, long timeToConnectMillis) {
+        connectTimes.record(timeToConnectMillis);
+        debuggers.forEach(d -> d.peerConnected(peer, timeToConnectMillis));
+    }
+
     @Override
     public void updateCoturnList(Collection<CoturnServer> servers) {
         debuggers.forEach(d -> d.updateCoturnList(servers));
@@ -3,6 +3,7 @@ package com.faforever.iceadapter.debug;
 import com.faforever.iceadapter.IceAdapter;
 import com.faforever.iceadapter.gpgnet.GPGNetServer;
 import com.faforever.iceadapter.gpgnet.GameState;
+import com.faforever.iceadapter.ice.EchoStatistics;
 import com.faforever.iceadapter.ice.Peer;
 import com.faforever.iceadapter.ice.PeerConnectivityCheckerModule;
 import com.nbarraille.jjsonrpc.JJsonPeer;
@@ -231,6 +232,11 @@ public class DebugWindow extends Application implements Debugger {
         public SimpleIntegerProperty lastReceived = new SimpleIntegerProperty(-1);
         public SimpleIntegerProperty echosReceived = new SimpleIntegerProperty(-1);
         public SimpleIntegerProperty invalidEchosReceived = new SimpleIntegerProperty(-1);
+        public SimpleIntegerProperty rttP50 = new SimpleIntegerProperty(-1);
+        public SimpleIntegerProperty rttP95 = new SimpleIntegerProperty(-1);
+        public SimpleIntegerProperty rttP99 = new SimpleIntegerProperty(-1);
+        public SimpleIntegerProperty jitter = new SimpleIntegerProperty(-1);
+        public SimpleStringProperty packetLoss = new SimpleStringProperty("");
         public SimpleStringProperty localCandidate = new SimpleStringProperty("");
         public SimpleStringProperty remoteCandidate = new SimpleStringProperty("");
 
@@ -316,6 +322,46 @@ public class DebugWindow extends Application implements Debugger {
             return invalidEchosReceived;
         }
 
+        public int getRttP50() {
+            return rttP50.get();
+        }
+
+        public SimpleIntegerProperty rttP50Property() {
+            return rttP50;
+        }
+
+        public int getRttP95() {
+            return rttP95.get();
+        }
+
+        public SimpleIntegerProperty rttP95Property() {
+            return rttP95;
+        }
+
+        public int getRttP99() {
+            return rttP99.get();
+        }
+
+        public SimpleIntegerProperty rttP99Property() {
+            return rttP99;
+        }
+
+        public int getJitter() {
+            return jitter.get();
+        }
+
+        public SimpleIntegerProperty jitterProperty() {
+            return jitter;
+        }
+
+        public String getPacketLoss() {
+            return packetLoss.get();
+        }
+
+        public SimpleStringProperty packetLossProperty() {
+            return packetLoss;
+        }
+
         public String getLocalCandidate() {
             return localCandidate.get();
         }
@@ -365,10 +411,21 @@ public class DebugWindow extends Application implements Debugger {
                     .map(PeerConnectivityCheckerModule::getEchosReceived)
                     .orElse(-1L)
                     .intValue());
-            echosReceived.set(connectivityChecker
-                    .map(PeerConnectivityCheckerModule::getEchosReceived)
+            invalidEchosReceived.set(connectivityChecker
+                    .map(PeerConnectivityCheckerModule::getInvalidEchosReceived)
                     .orElse(-1L)
                     .intValue());
+
+            Optional<EchoStatistics.Snapshot> echoStatistics = connectivityChecker
+                    .map(PeerConnectivityCheckerModule::getEchoStatistics)
+                    .map(EchoStatistics::snapshot);
+            rttP50.set(echoStatistics.map(it -> Math.round(it.rttP50())).orElse(-1));
+            rttP95.set(echoStatistics.map(it -> Math.round(it.rttP95())).orElse(-1));
+            rttP99.set(echoStatistics.map(it -> Math.round(it.rttP99())).orElse(-1));
+            jitter.set(echoStatistics.map(it -> Math.round(it.jitter())).orElse(-1));
+            packetLoss.set(echoStatistics
+                    .map(it -> "%.1f %%".formatted(it.packetLoss() * 100))
+                    .orElse(""));
         }
 
         @Override
@@ -41,6 +41,11 @@ public class DebugWindowController {
     public TableColumn lastColumn;
     public TableColumn echosRcvColumn;
     public TableColumn invalidEchosRcvColumn;
+    public TableColumn rttP50Column;
+    public TableColumn rttP95Column;
+    public TableColumn rttP99Column;
+    public TableColumn jitterColumn;
+    public TableColumn lossColumn;
     public TableColumn localCandColumn;
     public TableColumn remoteCandColumn;
 
@@ -81,6 +86,11 @@ public class DebugWindowController {
         lastColumn.setCellValueFactory(new PropertyValueFactory<>("lastReceived"));
         echosRcvColumn.setCellValueFactory(new PropertyValueFactory<>("echosReceived"));
         invalidEchosRcvColumn.setCellValueFactory(new PropertyValueFactory<>("invalidEchosReceived"));
+        rttP50Column.setCellValueFactory(new PropertyValueFactory<>("rttP50"));
+        rttP95Column.setCellValueFactory(new PropertyValueFactory<>("rttP95"));
+        rttP99Column.setCellValueFactory(new PropertyValueFactory<>("rttP99"));
+        jitterColumn.setCellValueFactory(new PropertyValueFactory<>("jitter"));
+        lossColumn.setCellValueFactory(new PropertyValueFactory<>("packetLoss"));
         localCandColumn.setCellValueFactory(new PropertyValueFactory<>("localCandidate"));
         remoteCandColumn.setCellValueFactory(new PropertyValueFactory<>("remoteCandidate"));
 
@@ -26,5 +26,7 @@ public interface Debugger {
 
     void peerConnectivityUpdate(Peer peer);
 
+    default void peerConnected(Peer peer, long timeToConnectMillis) {}
+
     default void updateCoturnList(Collection<CoturnServer> servers) {}
 }
@@ -0,0 +1,142 @@
+package com.faforever.iceadapter.debug;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Optional journal of the events driving the adapter, to replay a session (see JournalReplay in the tests)
+ * Records the RPC calls of the client, the GPGNet messages of the game and the ICE state transitions in the order they
+ * happened, one json event per line. The first event is "journal start" with the version, player id, game id, login
+ * and start time. Times are in microseconds since the start. Events are only queued on the calling thread and written
+ * by a single writer thread, recording does nothing if the journal is disabled.
+ */
+@Slf4j
+public class EventJournal {
+
+    public static final String SOURCE_JOURNAL = "journal";
+    public static final String SOURCE_RPC = "rpc";
+    public static final String SOURCE_GPGNET = "gpgnet";
+    public static final String SOURCE_ICE = "ice";
+
+    private static final int QUEUE_CAPACITY = 8192;
+    private static final Duration CLOSE_TIMEOUT = Duration.ofSeconds(2);
+
+    private static volatile EventJournal INSTANCE;
+
+    public record Event(long time, String source, String name, List<Object> args) {}
+
+    private final Path file;
+    private final long startNanos = System.nanoTime();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final BlockingQueue<Event> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final LongAdder dropped = new LongAdder();
+    private volatile boolean running = true;
+    private Thread writer;
+
+    private EventJournal(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Starts the journal, does nothing if file is null
+     */
+    public static void init(Path file, String version, int playerId, int gameId, String login) {
+        if (file == null) {
+            return;
+        }
+
+        EventJournal journal = new EventJournal(file);
+        log.info("Writing event journal to {}", file);
+        journal.record(
+                SOURCE_JOURNAL, "start", List.of(version, playerId, gameId, login, System.currentTimeMillis()));
+        journal.writer = Thread.ofVirtual().name("eventJournal").start(journal::writerThread);
+        INSTANCE = journal;
+    }
+
+    public static void rpc(String method, Object... args) {
+        EventJournal journal = INSTANCE;
+        if (journal != null) {
+            journal.record(SOURCE_RPC, method, Arrays.asList(args));
+        }
+    }
+
+    public static void gpgnet(String command, List<Object> args) {
+        EventJournal journal = INSTANCE;
+        if (journal != null) {
+            journal.record(SOURCE_GPGNET, command, args);
+        }
+    }
+
+    public static void iceState(int remotePlayerId, String state) {
+        EventJournal journal = INSTANCE;
+        if (journal != null) {
+            journal.record(SOURCE_ICE, "state", List.of(remotePlayerId, state));
+        }
+    }
+
+    /**
+     * Writes the events recorded so far and stops the journal, returns once the writer thread finished
+     */
+    public static void close() {
+        EventJournal journal = INSTANCE;
+        if (journal != null) {
+            INSTANCE = null;
+            journal.record(SOURCE_JOURNAL, "end", List.of(journal.dropped.sum()));
+            journal.running = false;
+            try {
+                if (!journal.writer.join(CLOSE_TIMEOUT)) {
+                    log.warn("Event journal {} not written completely within {}", journal.file, CLOSE_TIMEOUT);
+                }
+            } catch (InterruptedException e) {
+                log.warn("Interrupted while writing event journal {}", journal.file);
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void record(String source, String name, List<Object> args) {
+        long time = (System.nanoTime() - startNanos) / 1000;
+        if (!queue.offer(new Event(time, source, name, args))) {
+            dropped.increment();
+        }
+    }
+
+    private void writerThread() {
+        List<Event> events = new ArrayList<>();
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            while (running || !queue.isEmpty()) {
+                Event event = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (event == null) {
+                    continue;
+                }
+
+                events.add(event);
+                queue.drainTo(events);
+                for (Event e : events) {
+                    writer.write(objectMapper.writeValueAsString(e));
+                    writer.newLine();
+                }
+                writer.flush();
+                events.clear();
+            }
+        } catch (IOException e) {
+            log.error("Failed to write event journal {}, journal disabled", file, e);
+            INSTANCE = null;
+        } catch (InterruptedException e) {
+            log.debug("Event journal interrupted");
+        }
+    }
+}
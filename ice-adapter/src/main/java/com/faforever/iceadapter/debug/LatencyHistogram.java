@@ -0,0 +1,58 @@
+package com.faforever.iceadapter.debug;
+
+import java.util.StringJoiner;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts durations into fixed buckets, recording is thread safe and does not allocate
+ */
+public class LatencyHistogram {
+    private final long[] upperBoundsMillis;
+    private final AtomicLongArray counts;
+
+    /**
+     * @param upperBoundsMillis inclusive upper bounds of the buckets in ascending order, an overflow bucket is added
+     */
+    public LatencyHistogram(long... upperBoundsMillis) {
+        this.upperBoundsMillis = upperBoundsMillis.clone();
+        this.counts = new AtomicLongArray(upperBoundsMillis.length + 1);
+    }
+
+    public void record(long millis) {
+        int bucket = 0;
+        while (bucket < upperBoundsMillis.length && millis > upperBoundsMillis[bucket]) {
+            bucket++;
+        }
+        counts.incrementAndGet(bucket);
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * @return the counts per bucket, the last one being the overflow bucket
+     */
+    public long[] getCounts() {
+        long[] snapshot = new long[counts.length()];
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = counts.get(i);
+        }
+        return snapshot;
+    }
+
+    @Override
+    public String toString() {
+        StringJoiner joiner = new StringJoiner(", ");
+        for (int i = 0; i < upperBoundsMillis.length; i++) {
+            joiner.add("<=%dms: %d".formatted(upperBoundsMillis[i], counts.get(i)));
+        }
+        joiner.add(">%dms: %d"
+                .formatted(upperBoundsMillis[upperBoundsMillis.length - 1], counts.get(upperBoundsMillis.length)));
+        return joiner.toString();
+    }
+}
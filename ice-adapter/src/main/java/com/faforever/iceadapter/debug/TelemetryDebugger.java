@@ -2,43 +2,82 @@ package com.faforever.iceadapter.debug;
 
 import com.faforever.iceadapter.IceAdapter;
 import com.faforever.iceadapter.gpgnet.GPGNetServer;
+import com.faforever.iceadapter.ice.EchoStatistics;
 import com.faforever.iceadapter.ice.Peer;
 import com.faforever.iceadapter.ice.PeerConnectivityCheckerModule;
+import com.faforever.iceadapter.ice.PeerTrafficCounters;
 import com.faforever.iceadapter.telemetry.*;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import com.google.common.util.concurrent.RateLimiter;
 import com.nbarraille.jjsonrpc.JJsonPeer;
 import java.net.ConnectException;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.UUID;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.LinkedBlockingQueue;
-import lombok.SneakyThrows;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import lombok.extern.slf4j.Slf4j;
 import org.ice4j.ice.Candidate;
 import org.ice4j.ice.CandidatePair;
 import org.ice4j.ice.Component;
 import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.drafts.Draft_6455;
+import org.java_websocket.framing.BinaryFrame;
+import org.java_websocket.framing.Framedata;
+import org.java_websocket.framing.TextFrame;
 import org.java_websocket.handshake.ServerHandshake;
+import org.java_websocket.protocols.IProtocol;
+import org.java_websocket.protocols.Protocol;
 
 @Slf4j
 public class TelemetryDebugger implements Debugger, AutoCloseable {
+    private static final int MAX_BATCH_SIZE = 64;
+    private static final long MIN_RECONNECT_BACKOFF = 1000;
+    private static final long MAX_RECONNECT_BACKOFF = 60_000;
+    // Websocket subprotocol for messages encoded as CBOR in binary frames, same structure as the JSON messages
+    private static final String CBOR_PROTOCOL = "ice-telemetry-cbor.v1";
+    private static final long REPLAY_TIMEOUT = 10_000;
+
     private final WebSocketClient websocketClient;
     private final ObjectMapper objectMapper;
+    private final ObjectMapper cborMapper;
+    // Whether the server accepted the CBOR subprotocol on the current connection
+    private volatile boolean cbor = false;
 
     private final Map<Integer, RateLimiter> peerRateLimiter = new ConcurrentHashMap<>();
-    private final BlockingQueue<OutgoingMessageV1> messageQueue = new LinkedBlockingQueue<>();
+    private final TelemetryMessageQueue messageQueue = new TelemetryMessageQueue();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder reconnects = new LongAdder();
+    private final LongAdder replayed = new LongAdder();
+    // Null if recording is disabled
+    private final TelemetryRecorder recorder;
 
     private final Thread sendingLoopThread;
 
-    public TelemetryDebugger(String telemetryServer, int gameId, int playerId) {
+    /**
+     * @param compact whether to offer CBOR to the server, JSON is used if the server does not accept it
+     * @param recordingDirectory where to record all messages for replay after an outage, null to disable recording
+     * @param recordingSize the size in bytes of the recording files together
+     */
+    public TelemetryDebugger(
+            String telemetryServer,
+            int gameId,
+            int playerId,
+            boolean compact,
+            Path recordingDirectory,
+            long recordingSize) {
         Debug.register(this);
 
         URI uri = URI.create("%s/adapter/v1/game/%d/player/%d".formatted(telemetryServer, gameId, playerId));
@@ -48,10 +87,16 @@ public class TelemetryDebugger implements Debugger, AutoCloseable {
                 gameId,
                 playerId);
 
-        websocketClient = new WebSocketClient(uri) {
+        // The empty protocol accepts servers that do not select a subprotocol
+        List<IProtocol> protocols =
+                compact ? List.of(new Protocol(CBOR_PROTOCOL), new Protocol("")) : List.of(new Protocol(""));
+        websocketClient = new WebSocketClient(uri, new Draft_6455(List.of(), protocols)) {
             @Override
             public void onOpen(ServerHandshake handshakedata) {
-                log.info("Telemetry websocket opened");
+                cbor = getDraft() instanceof Draft_6455 draft
+                        && draft.getProtocol() != null
+                        && CBOR_PROTOCOL.equals(draft.getProtocol().getProvidedProtocol());
+                log.info("Telemetry websocket opened ({})", cbor ? "CBOR" : "JSON");
             }
 
             @Override
@@ -67,8 +112,8 @@ public class TelemetryDebugger implements Debugger, AutoCloseable {
             @Override
             public void onError(Exception ex) {
                 if (ex instanceof ConnectException) {
-                    log.error("Error connecting to Telemetry websocket", ex);
-                    Debug.remove(TelemetryDebugger.this);
+                    // Stays registered, messages are recorded and the sending loop keeps trying to reconnect
+                    log.warn("Error connecting to Telemetry websocket: {}", ex.getMessage());
                 } else {
                     log.error("Error in Telemetry websocket", ex);
                 }
@@ -77,56 +122,178 @@ public class TelemetryDebugger implements Debugger, AutoCloseable {
 
         objectMapper = new ObjectMapper();
         objectMapper.registerModule(new JavaTimeModule());
+        cborMapper = compact ? new ObjectMapper(new CBORFactory()).registerModule(new JavaTimeModule()) : null;
+        recorder = recordingDirectory != null && recordingSize > 0
+                ? new TelemetryRecorder(recordingDirectory, gameId, recordingSize, objectMapper)
+                : null;
 
         sendingLoopThread = Thread.ofVirtual().name("sendingLoop").start(this::sendingLoop);
     }
 
     private void sendMessage(OutgoingMessageV1 message) {
-        try {
-            messageQueue.put(message);
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
+        if (recorder != null) {
+            recorder.record(message);
         }
+        if (!messageQueue.add(message)) {
+            log.trace("Telemetry queue full, dropping {}", message);
+        }
+    }
+
+    /**
+     * @return the counters of the telemetry queue and connection
+     */
+    public TelemetryMessageQueue.Snapshot getStatistics() {
+        return messageQueue.snapshot(
+                sent.sum(),
+                failed.sum(),
+                reconnects.sum(),
+                replayed.sum(),
+                recorder != null ? recorder.getDropped() : 0);
     }
 
-    @SneakyThrows
     private void sendingLoop() {
+        List<OutgoingMessageV1> batch = new ArrayList<>(MAX_BATCH_SIZE);
+        List<Framedata> frames = new ArrayList<>(MAX_BATCH_SIZE);
+        long reconnectBackoff = MIN_RECONNECT_BACKOFF;
+        // Time of the oldest message missed while not connected, replayed from the recording once connected
+        long offlineSince = -1;
+        // Messages up to here have been replayed from the recording and are skipped
+        long replayedUntil = -1;
         while (!Thread.currentThread().isInterrupted()) {
-            var message = messageQueue.take();
             try {
-                String json = objectMapper.writeValueAsString(message);
+                if (batch.isEmpty()) {
+                    messageQueue.takeBatch(batch, MAX_BATCH_SIZE);
+                    removeUntil(batch, replayedUntil);
+                    if (batch.isEmpty()) {
+                        continue;
+                    }
+                }
+
+                if (!websocketClient.isOpen()) {
+                    // The batch is kept until connected, further messages are coalesced or dropped by the queue
+                    if (recorder != null) {
+                        offlineSince = oldest(batch, offlineSince);
+                    }
+                    if (!websocketClient.isClosed() || !reconnect()) {
+                        // Not connected yet by startupComplete or the reconnect failed
+                        Thread.sleep(reconnectBackoff);
+                        reconnectBackoff = Math.min(reconnectBackoff * 2, MAX_RECONNECT_BACKOFF);
+                        continue;
+                    }
+                    reconnectBackoff = MIN_RECONNECT_BACKOFF;
+                }
+
+                if (offlineSince >= 0) {
+                    // Everything recorded during the outage is sent instead of the messages kept in memory
+                    long now = System.currentTimeMillis();
+                    replay(offlineSince, now);
+                    offlineSince = -1;
+                    replayedUntil = now;
+                    removeUntil(batch, replayedUntil);
+                }
 
-                if (websocketClient.isClosed()) {
-                    log.warn("Telemetry websocket is closed");
-                    websocketClient.reconnectBlocking();
-                    log.info("Telemetry websocket reconnected");
+                boolean binary = cbor;
+                for (OutgoingMessageV1 message : batch) {
+                    log.trace("Sending telemetry message: {}", message);
+                    frames.add(
+                            binary
+                                    ? binaryFrame(cborMapper.writeValueAsBytes(message))
+                                    : textFrame(objectMapper.writeValueAsString(message)));
                 }
 
-                log.trace("Sending telemetry message: {}", json);
-                websocketClient.send(json);
+                // All messages of the batch are written at once
+                if (!frames.isEmpty()) {
+                    websocketClient.sendFrame(frames);
+                    sent.add(batch.size());
+                }
             } catch (InterruptedException e) {
                 log.info("Sending loop interrupted");
                 return;
             } catch (Exception e) {
-                log.error("Error on sending message object: {}", message, e);
+                failed.add(batch.size());
+                log.error("Error on sending {} telemetry messages", batch.size(), e);
+                if (recorder != null && !websocketClient.isOpen()) {
+                    offlineSince = oldest(batch, offlineSince);
+                }
+            }
+            batch.clear();
+            frames.clear();
+        }
+    }
+
+    /**
+     * Sends the recorded messages of the time range
+     */
+    private void replay(long fromMillis, long toMillis) throws Exception {
+        List<String> messages = recorder.replay(fromMillis, toMillis).get(REPLAY_TIMEOUT, TimeUnit.MILLISECONDS);
+        log.info("Replaying {} telemetry messages recorded while disconnected", messages.size());
+
+        boolean binary = cbor;
+        List<Framedata> frames = new ArrayList<>(MAX_BATCH_SIZE);
+        for (String json : messages) {
+            frames.add(
+                    binary ? binaryFrame(cborMapper.writeValueAsBytes(objectMapper.readTree(json))) : textFrame(json));
+            if (frames.size() == MAX_BATCH_SIZE) {
+                websocketClient.sendFrame(frames);
+                frames.clear();
             }
         }
+        if (!frames.isEmpty()) {
+            websocketClient.sendFrame(frames);
+        }
+        replayed.add(messages.size());
+    }
+
+    private static void removeUntil(List<OutgoingMessageV1> batch, long untilMillis) {
+        if (untilMillis >= 0) {
+            batch.removeIf(message -> MessageIds.getTimestamp(message.messageId()) <= untilMillis);
+        }
+    }
+
+    private static long oldest(List<OutgoingMessageV1> batch, long offlineSince) {
+        long oldest = offlineSince >= 0 ? offlineSince : Long.MAX_VALUE;
+        for (OutgoingMessageV1 message : batch) {
+            oldest = Math.min(oldest, MessageIds.getTimestamp(message.messageId()));
+        }
+        return oldest == Long.MAX_VALUE ? offlineSince : oldest;
+    }
+
+    private static Framedata textFrame(String json) {
+        TextFrame frame = new TextFrame();
+        frame.setPayload(ByteBuffer.wrap(json.getBytes(StandardCharsets.UTF_8)));
+        return frame;
+    }
+
+    private static Framedata binaryFrame(byte[] cbor) {
+        BinaryFrame frame = new BinaryFrame();
+        frame.setPayload(ByteBuffer.wrap(cbor));
+        return frame;
+    }
+
+    private boolean reconnect() throws InterruptedException {
+        log.warn("Telemetry websocket is closed, reconnecting");
+        reconnects.increment();
+        if (!websocketClient.reconnectBlocking()) {
+            log.info("Telemetry websocket reconnect failed");
+            return false;
+        }
+        log.info("Telemetry websocket reconnected");
+        return true;
     }
 
     @Override
     public void startupComplete() {
         try {
             if (!websocketClient.connectBlocking()) {
-                Debug.remove(this);
-                return;
+                // Messages are kept, the sending loop reconnects once the server is reachable
+                log.warn("Failed to connect to telemetry websocket, retrying in the background");
             }
         } catch (InterruptedException e) {
-            Debug.remove(this);
             log.error("Failed to connect to telemetry websocket", e);
         }
 
         sendMessage(new RegisterAsPeer(
-                UUID.randomUUID(), "java-ice-adapter/" + IceAdapter.getVersion(), IceAdapter.getLogin()));
+                MessageIds.next(), "java-ice-adapter/" + IceAdapter.getVersion(), IceAdapter.getLogin()));
     }
 
     @Override
@@ -137,38 +304,38 @@ public class TelemetryDebugger implements Debugger, AutoCloseable {
 
     @Override
     public void gpgnetStarted() {
-        sendMessage(new UpdateGpgnetState(UUID.randomUUID(), "WAITING_FOR_GAME"));
+        sendMessage(new UpdateGpgnetState(MessageIds.next(), "WAITING_FOR_GAME"));
     }
 
     @Override
     public void gpgnetConnectedDisconnected() {
         sendMessage(new UpdateGpgnetState(
-                UUID.randomUUID(), GPGNetServer.isConnected() ? "GAME_CONNECTED" : "WAITING_FOR_GAME"));
+                MessageIds.next(), GPGNetServer.isConnected() ? "GAME_CONNECTED" : "WAITING_FOR_GAME"));
     }
 
     @Override
     public void gameStateChanged() {
         sendMessage(new UpdateGameState(
-                UUID.randomUUID(),
+                MessageIds.next(),
                 GPGNetServer.getGameState()
                         .orElseThrow(() -> new IllegalStateException("gameState must not change to null"))));
     }
 
     @Override
     public void connectToPeer(int id, String login, boolean localOffer) {
-        sendMessage(new ConnectToPeer(UUID.randomUUID(), id, login, localOffer));
+        sendMessage(new ConnectToPeer(MessageIds.next(), id, login, localOffer));
     }
 
     @Override
     public void disconnectFromPeer(int id) {
         peerRateLimiter.remove(id);
-        sendMessage(new DisconnectFromPeer(UUID.randomUUID(), id));
+        sendMessage(new DisconnectFromPeer(MessageIds.next(), id));
     }
 
     @Override
     public void peerStateChanged(Peer peer) {
         sendMessage(new UpdatePeerState(
-                UUID.randomUUID(),
+                MessageIds.next(),
                 peer.getRemoteId(),
                 peer.getIce().getIceState(),
                 Optional.ofNullable(peer.getIce().getComponent())
@@ -198,8 +365,12 @@ public class TelemetryDebugger implements Debugger, AutoCloseable {
 
         log.trace("Sending connectivity update for peer {} (id {})", peer.getRemoteLogin(), peer.getRemoteId());
 
+        Optional<EchoStatistics.Snapshot> echoStatistics = Optional.ofNullable(peer.getIce().getConnectivityChecker())
+                .map(PeerConnectivityCheckerModule::getEchoStatistics)
+                .map(EchoStatistics::snapshot);
+
         sendMessage(new UpdatePeerConnectivity(
-                UUID.randomUUID(),
+                MessageIds.next(),
                 peer.getRemoteId(),
                 Optional.ofNullable(peer.getIce().getConnectivityChecker())
                         .map(PeerConnectivityCheckerModule::getAverageRTT)
@@ -207,13 +378,40 @@ public class TelemetryDebugger implements Debugger, AutoCloseable {
                 Optional.ofNullable(peer.getIce().getConnectivityChecker())
                         .map(PeerConnectivityCheckerModule::getLastPacketReceived)
                         .map(Instant::ofEpochMilli)
-                        .orElse(null)));
+                        .orElse(null),
+                echoStatistics.map(EchoStatistics.Snapshot::rttP50).orElse(null),
+                echoStatistics.map(EchoStatistics.Snapshot::rttP95).orElse(null),
+                echoStatistics.map(EchoStatistics.Snapshot::rttP99).orElse(null),
+                echoStatistics.map(EchoStatistics.Snapshot::jitter).orElse(null),
+                echoStatistics.map(EchoStatistics.Snapshot::packetLoss).orElse(null)));
+
+        PeerTrafficCounters.Snapshot traffic = peer.getTrafficCounters().snapshot();
+        sendMessage(new UpdatePeerStatistics(
+                MessageIds.next(),
+                peer.getRemoteId(),
+                traffic.packetsToIce(),
+                traffic.bytesToIce(),
+                traffic.packetsFromIce(),
+                traffic.bytesFromIce(),
+                traffic.droppedToIce(),
+                traffic.droppedFromIce(),
+                traffic.oversizedPackets(),
+                traffic.sendFailuresToIce(),
+                traffic.sendFailuresToFa(),
+                traffic.failovers(),
+                traffic.duplicatesSent(),
+                traffic.duplicatesDropped(),
+                traffic.paritySent(),
+                traffic.recoveredPackets(),
+                traffic.datagramsSaved(),
+                traffic.datagramsSavedPerSecond(),
+                traffic.framingBytesSaved()));
     }
 
     @Override
     public void updateCoturnList(Collection<CoturnServer> servers) {
         sendMessage(new UpdateCoturnList(
-                UUID.randomUUID(),
+                MessageIds.next(),
                 servers.stream().map(CoturnServer::host).findFirst().orElse(null),
                 servers));
     }
@@ -221,5 +419,8 @@ public class TelemetryDebugger implements Debugger, AutoCloseable {
     @Override
     public void close() {
         sendingLoopThread.interrupt();
+        if (recorder != null) {
+            recorder.close();
+        }
     }
 }
@@ -0,0 +1,143 @@
+package com.faforever.iceadapter.debug;
+
+import com.faforever.iceadapter.telemetry.OutgoingMessageV1;
+import com.faforever.iceadapter.telemetry.UpdatePeerConnectivity;
+import com.faforever.iceadapter.telemetry.UpdatePeerState;
+import com.faforever.iceadapter.telemetry.UpdatePeerStatistics;
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+import com.fasterxml.jackson.databind.annotation.JsonNaming;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded ring buffer of telemetry messages, memory stays the same however slow the telemetry server is
+ * A per peer update replaces a still queued update of the same type and peer in place, only the latest state is of
+ * interest. Any other message ends coalescing for the messages queued before it, so updates are never moved across
+ * e.g. a DisconnectFromPeer. If the buffer is full, new messages are dropped and counted.
+ */
+public class TelemetryMessageQueue {
+
+    static final int CAPACITY = 1024;
+
+    private final OutgoingMessageV1[] messages = new OutgoingMessageV1[CAPACITY];
+    private final Lock lockQueue = new ReentrantLock();
+    private final Condition notEmpty = lockQueue.newCondition();
+    private int head = 0;
+    private int size = 0;
+    // Slot of the queued update per coalescing key
+    private final Map<CoalescingKey, Integer> pendingUpdates = new HashMap<>();
+
+    private final LongAdder queued = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    private record CoalescingKey(Class<?> type, int peerPlayerId) {}
+
+    @JsonNaming(PropertyNamingStrategies.SnakeCaseStrategy.class)
+    public record Snapshot(
+            int queued,
+            long totalQueued,
+            long coalesced,
+            long dropped,
+            long sent,
+            long failed,
+            long reconnects,
+            long replayed,
+            long recordingDropped) {}
+
+    /**
+     * @return false if the message was dropped as the buffer is full
+     */
+    boolean add(OutgoingMessageV1 message) {
+        CoalescingKey key = coalescingKey(message);
+
+        lockQueue.lock();
+        try {
+            if (key == null) {
+                pendingUpdates.clear();
+            } else {
+                Integer slot = pendingUpdates.get(key);
+                if (slot != null) {
+                    messages[slot] = message;
+                    coalesced.increment();
+                    return true;
+                }
+            }
+
+            if (size == CAPACITY) {
+                dropped.increment();
+                return false;
+            }
+
+            int slot = (head + size) % CAPACITY;
+            messages[slot] = message;
+            size++;
+            if (key != null) {
+                pendingUpdates.put(key, slot);
+            }
+            queued.increment();
+            notEmpty.signal();
+            return true;
+        } finally {
+            lockQueue.unlock();
+        }
+    }
+
+    /**
+     * Waits for at least one message and moves up to maxMessages queued messages into the batch
+     */
+    void takeBatch(List<OutgoingMessageV1> batch, int maxMessages) throws InterruptedException {
+        lockQueue.lock();
+        try {
+            while (size == 0) {
+                notEmpty.await();
+            }
+
+            int count = Math.min(size, maxMessages);
+            for (int i = 0; i < count; i++) {
+                batch.add(messages[head]);
+                messages[head] = null;
+                head = (head + 1) % CAPACITY;
+            }
+            size -= count;
+            // Slots of taken updates are reused, their keys must not point to them anymore
+            pendingUpdates.clear();
+        } finally {
+            lockQueue.unlock();
+        }
+    }
+
+    Snapshot snapshot(long sent, long failed, long reconnects, long replayed, long recordingDropped) {
+        int currentSize;
+        lockQueue.lock();
+        try {
+            currentSize = size;
+        } finally {
+            lockQueue.unlock();
+        }
+        return new Snapshot(
+                currentSize,
+                queued.sum(),
+                coalesced.sum(),
+                dropped.sum(),
+                sent,
+                failed,
+                reconnects,
+                replayed,
+                recordingDropped);
+    }
+
+    private static CoalescingKey coalescingKey(OutgoingMessageV1 message) {
+        return switch (message) {
+            case UpdatePeerState m -> new CoalescingKey(UpdatePeerState.class, m.peerPlayerId());
+            case UpdatePeerConnectivity m -> new CoalescingKey(UpdatePeerConnectivity.class, m.peerPlayerId());
+            case UpdatePeerStatistics m -> new CoalescingKey(UpdatePeerStatistics.class, m.peerPlayerId());
+            default -> null;
+        };
+    }
+}
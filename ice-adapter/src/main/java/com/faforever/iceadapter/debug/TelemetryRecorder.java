@@ -0,0 +1,232 @@
+package com.faforever.iceadapter.debug;
+
+import com.faforever.iceadapter.telemetry.MessageIds;
+import com.faforever.iceadapter.telemetry.OutgoingMessageV1;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Records all telemetry messages to local files, so they survive an unreachable telemetry server
+ * Each line is the time of the message in ms (taken from its id), a tab and the json message. A file is rotated once
+ * it reaches a quarter of the size limit and only the last 4 files are kept. Serializing and writing happens on a
+ * single writer thread, the threads raising debug events only queue the message.
+ */
+@Slf4j
+class TelemetryRecorder implements AutoCloseable {
+
+    static final int MAX_FILES = 4;
+    private static final int QUEUE_CAPACITY = 4096;
+    // Same as the log files, see logback.xml
+    private static final Duration MAX_AGE = Duration.ofDays(5);
+    private static final String FILE_PREFIX = "telemetry_";
+
+    private final Path directory;
+    private final String baseName;
+    private final long maxFileSize;
+    private final ObjectMapper objectMapper;
+
+    // A message to record or a task to run once everything queued before it is written
+    private record Entry(OutgoingMessageV1 message, Runnable task) {}
+
+    private final BlockingQueue<Entry> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final LongAdder dropped = new LongAdder();
+    private volatile boolean running = true;
+
+    // Only used by the writer thread
+    private final Deque<Path> files = new ArrayDeque<>();
+    private OutputStream output;
+    private long fileSize;
+    private int fileIndex = 0;
+
+    /**
+     * @param maxSize the size in bytes of all files of this game together
+     */
+    TelemetryRecorder(Path directory, int gameId, long maxSize, ObjectMapper objectMapper) {
+        this.directory = directory;
+        this.baseName = "%s%d_%d".formatted(FILE_PREFIX, gameId, System.currentTimeMillis());
+        this.maxFileSize = maxSize / MAX_FILES;
+        this.objectMapper = objectMapper;
+
+        log.info("Recording telemetry to {}/{}.*.jsonl", directory, baseName);
+        Thread.ofVirtual().name("telemetryRecorder").start(this::writerThread);
+    }
+
+    /**
+     * Queues the message for recording, dropped if the writer does not keep up
+     */
+    void record(OutgoingMessageV1 message) {
+        if (!queue.offer(new Entry(message, null))) {
+            dropped.increment();
+        }
+    }
+
+    /**
+     * Reads the recorded messages in the time range, after all messages recorded so far have been written
+     *
+     * @return the json messages in the order they were recorded
+     */
+    CompletableFuture<List<String>> replay(long fromMillis, long toMillis) {
+        CompletableFuture<List<String>> future = new CompletableFuture<>();
+        try {
+            queue.put(new Entry(null, () -> future.complete(readLines(fromMillis, toMillis))));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    long getDropped() {
+        return dropped.sum();
+    }
+
+    private void writerThread() {
+        deleteOldRecordings();
+
+        List<Entry> entries = new ArrayList<>();
+        try {
+            while (running) {
+                entries.add(queue.take());
+                queue.drainTo(entries);
+
+                for (Entry entry : entries) {
+                    if (entry.message() != null) {
+                        write(entry.message());
+                    } else {
+                        flush();
+                        entry.task().run();
+                    }
+                }
+                flush();
+                entries.clear();
+            }
+        } catch (InterruptedException e) {
+            log.debug("Telemetry recorder interrupted");
+        } finally {
+            closeOutput();
+        }
+    }
+
+    private void write(OutgoingMessageV1 message) {
+        try {
+            byte[] line = (MessageIds.getTimestamp(message.messageId()) + "\t"
+                            + objectMapper.writeValueAsString(message) + "\n")
+                    .getBytes(StandardCharsets.UTF_8);
+            if (output == null || fileSize + line.length > maxFileSize) {
+                rotate();
+            }
+            output.write(line);
+            fileSize += line.length;
+        } catch (IOException e) {
+            log.warn("Failed to record telemetry message {}", message, e);
+            closeOutput();
+        }
+    }
+
+    private void flush() {
+        if (output == null) {
+            return;
+        }
+
+        try {
+            output.flush();
+        } catch (IOException e) {
+            log.warn("Failed to flush telemetry recording", e);
+            closeOutput();
+        }
+    }
+
+    private void rotate() throws IOException {
+        closeOutput();
+
+        while (files.size() >= MAX_FILES) {
+            Files.deleteIfExists(files.removeFirst());
+        }
+
+        Path file = directory.resolve("%s.%d.jsonl".formatted(baseName, fileIndex++));
+        output = new BufferedOutputStream(Files.newOutputStream(
+                file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE));
+        fileSize = 0;
+        files.add(file);
+    }
+
+    private void closeOutput() {
+        if (output == null) {
+            return;
+        }
+
+        try {
+            output.close();
+        } catch (IOException e) {
+            log.warn("Failed to close telemetry recording", e);
+        }
+        output = null;
+    }
+
+    private List<String> readLines(long fromMillis, long toMillis) {
+        List<String> lines = new ArrayList<>();
+        for (Path file : files) {
+            try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    int tab = line.indexOf('\t');
+                    if (tab < 0) {
+                        continue;
+                    }
+
+                    long timestamp = Long.parseLong(line, 0, tab, 10);
+                    if (timestamp >= fromMillis && timestamp <= toMillis) {
+                        lines.add(line.substring(tab + 1));
+                    }
+                }
+            } catch (IOException | NumberFormatException e) {
+                log.warn("Failed to read telemetry recording {}", file, e);
+            }
+        }
+        return lines;
+    }
+
+    private void deleteOldRecordings() {
+        Instant oldest = Instant.now().minus(MAX_AGE);
+        try (DirectoryStream<Path> recordings = Files.newDirectoryStream(directory, FILE_PREFIX + "*.jsonl")) {
+            for (Path recording : recordings) {
+                if (Files.getLastModifiedTime(recording).toInstant().isBefore(oldest)) {
+                    Files.deleteIfExists(recording);
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Failed to delete old telemetry recordings in {}", directory, e);
+        }
+    }
+
+    /**
+     * Stops once everything queued so far is written, the writer is not interrupted as that closes the file channel
+     */
+    @Override
+    public void close() {
+        try {
+            queue.put(new Entry(null, () -> running = false));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -4,7 +4,6 @@ import com.google.common.io.LittleEndianDataInputStream;
 import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
@@ -18,7 +17,10 @@ public class FaDataInputStream extends InputStream {
     private static final int FIELD_TYPE_INT = 0;
 
     private final LittleEndianDataInputStream inputStream;
-    private final Charset charset = StandardCharsets.UTF_8;
+
+    // Reused for every string, only grows. Messages are read by a single thread
+    private byte[] buffer = new byte[256];
+    private char[] chars = new char[256];
 
     public FaDataInputStream(InputStream inputStream) {
         this.inputStream = new LittleEndianDataInputStream(new BufferedInputStream(inputStream));
@@ -38,12 +40,12 @@ public class FaDataInputStream extends InputStream {
 
             switch (fieldType) {
                 case FIELD_TYPE_INT:
+                    // Boxed as the chunks are forwarded as is (e.g. via RPC), small values come from the Integer cache
                     chunks.add(readInt());
                     break;
 
                 default:
-                    // This could surely be optimized
-                    chunks.add(readString().replace("/t", "\t").replace("/n", "\n"));
+                    chunks.add(readString(true));
             }
         }
 
@@ -60,11 +62,54 @@ public class FaDataInputStream extends InputStream {
     }
 
     public String readString() throws IOException {
+        return readString(false);
+    }
+
+    /**
+     * Reads the string into the reused buffer and decodes it
+     * ASCII strings (by far the most common) are decoded and unescaped in a single pass, others fall back to the
+     * UTF-8 decoder of the JDK.
+     *
+     * @param unescape whether "/t" and "/n" are replaced by tab and newline, as FA escapes them in chunks
+     */
+    private String readString(boolean unescape) throws IOException {
         int size = readInt();
+        if (size < 0) {
+            throw new IOException("Invalid string size: " + size);
+        }
 
-        byte[] buffer = new byte[size];
-        inputStream.readFully(buffer);
-        return new String(buffer, charset);
+        if (buffer.length < size) {
+            buffer = new byte[Math.max(size, buffer.length * 2)];
+        }
+        inputStream.readFully(buffer, 0, size);
+
+        boolean escaped = false;
+        for (int i = 0; i < size; i++) {
+            byte b = buffer[i];
+            if (b < 0) {
+                String string = new String(buffer, 0, size, StandardCharsets.UTF_8);
+                return unescape ? string.replace("/t", "\t").replace("/n", "\n") : string;
+            }
+            escaped |= b == '/';
+        }
+
+        if (!unescape || !escaped) {
+            // ASCII is a subset of Latin-1, which the JDK copies without decoding
+            return new String(buffer, 0, size, StandardCharsets.ISO_8859_1);
+        }
+
+        if (chars.length < size) {
+            chars = new char[Math.max(size, chars.length * 2)];
+        }
+        int length = 0;
+        for (int i = 0; i < size; i++) {
+            char c = (char) buffer[i];
+            if (c == '/' && i + 1 < size && (buffer[i + 1] == 't' || buffer[i + 1] == 'n')) {
+                c = buffer[++i] == 't' ? '\t' : '\n';
+            }
+            chars[length++] = c;
+        }
+        return new String(chars, 0, length);
     }
 
     @Override
@@ -1,18 +1,13 @@
 package com.faforever.iceadapter.gpgnet;
 
-import com.google.common.io.LittleEndianDataOutputStream;
-import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.nio.charset.Charset;
-import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
-import java.util.List;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Writes data to Forged Alliance (the forgedalliance, not the lobby).
+ * Messages are encoded into a reused buffer and only written on flush, so a batch of messages goes out in a single
+ * write. Not thread safe, GPGNetServer writes from a single thread.
  */
 public class FaDataOutputStream extends OutputStream {
 
@@ -20,82 +15,116 @@ public class FaDataOutputStream extends OutputStream {
     public static final int FIELD_TYPE_FOLLOWING_STRING = 2;
     public static final int FIELD_TYPE_STRING = 1;
     public static final char DELIMITER = '\b';
-    private final LittleEndianDataOutputStream outputStream;
-    private final Charset charset = StandardCharsets.UTF_8;
-    private final Lock writer = new ReentrantLock();
+    private final OutputStream outputStream;
+
+    private byte[] buffer = new byte[4096];
+    private int position = 0;
 
     public FaDataOutputStream(OutputStream outputStream) {
-        this.outputStream = new LittleEndianDataOutputStream(new BufferedOutputStream(outputStream));
+        this.outputStream = outputStream;
     }
 
     @Override
-    public void write(int b) throws IOException {
-        writer.lock();
-        try {
-            outputStream.write(b);
-        } finally {
-            writer.unlock();
-        }
+    public void write(int b) {
+        ensureCapacity(1);
+        buffer[position++] = (byte) b;
     }
 
-    public void writeMessage(String header, Object... args) throws IOException {
-        writer.lock();
-        try {
-            writeString(header);
-            writeArgs(Arrays.asList(args));
-            outputStream.flush();
-        } finally {
-            writer.unlock();
-        }
+    /**
+     * Encodes the message, it is sent with the next flush
+     */
+    public void writeMessage(String header, Object... args) {
+        writeString(header);
+        writeArgs(args);
     }
 
     @Override
     public void flush() throws IOException {
-        writer.lock();
-        try {
-            outputStream.flush();
-        } finally {
-            writer.unlock();
+        if (position > 0) {
+            outputStream.write(buffer, 0, position);
+            position = 0;
         }
+        outputStream.flush();
     }
 
     @Override
     public void close() throws IOException {
-        writer.lock();
-        try {
-            outputStream.close();
-        } finally {
-            writer.unlock();
-        }
+        outputStream.close();
     }
 
-    private void writeArgs(List<Object> args) throws IOException {
-        writeInt(args.size());
+    private void writeArgs(Object[] args) {
+        writeInt(args.length);
 
         for (Object arg : args) {
             if (arg instanceof Double d) {
-                writeByte(FIELD_TYPE_INT);
+                write(FIELD_TYPE_INT);
                 writeInt(d.intValue());
             } else if (arg instanceof Integer i) {
-                writeByte(FIELD_TYPE_INT);
+                write(FIELD_TYPE_INT);
                 writeInt(i);
             } else if (arg instanceof String value) {
-                writeByte(FIELD_TYPE_STRING);
+                write(FIELD_TYPE_STRING);
                 writeString(value);
             }
         }
     }
 
-    private void writeInt(int value) throws IOException {
-        outputStream.writeInt(value);
+    private void writeInt(int value) {
+        ensureCapacity(4);
+        writeInt(position, value);
+        position += 4;
     }
 
-    private void writeByte(int b) throws IOException {
-        outputStream.writeByte(b);
+    // Little endian
+    private void writeInt(int offset, int value) {
+        buffer[offset] = (byte) value;
+        buffer[offset + 1] = (byte) (value >>> 8);
+        buffer[offset + 2] = (byte) (value >>> 16);
+        buffer[offset + 3] = (byte) (value >>> 24);
     }
 
-    private void writeString(String string) throws IOException {
-        outputStream.writeInt(string.length());
-        outputStream.write(string.getBytes(charset));
+    /**
+     * Writes the length of the UTF-8 encoded string in bytes, followed by the bytes
+     * Encodes straight into the buffer, unpaired surrogates are replaced by '?' like String.getBytes does.
+     */
+    private void writeString(String string) {
+        int length = string.length();
+        // At most 3 bytes per UTF-16 unit (4 bytes for a surrogate pair of 2 units)
+        ensureCapacity(4 + 3 * length);
+
+        int lengthOffset = position;
+        int offset = position + 4;
+        for (int i = 0; i < length; i++) {
+            char c = string.charAt(i);
+            if (c < 0x80) {
+                buffer[offset++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[offset++] = (byte) (0xC0 | (c >> 6));
+                buffer[offset++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c)
+                    && i + 1 < length
+                    && Character.isLowSurrogate(string.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, string.charAt(++i));
+                buffer[offset++] = (byte) (0xF0 | (codePoint >> 18));
+                buffer[offset++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buffer[offset++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buffer[offset++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                buffer[offset++] = '?';
+            } else {
+                buffer[offset++] = (byte) (0xE0 | (c >> 12));
+                buffer[offset++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[offset++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+
+        writeInt(lengthOffset, offset - lengthOffset - 4);
+        position = offset;
+    }
+
+    private void ensureCapacity(int bytes) {
+        if (position + bytes > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(position + bytes, buffer.length * 2));
+        }
     }
 }
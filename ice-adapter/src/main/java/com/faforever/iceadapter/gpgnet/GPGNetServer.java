@@ -3,6 +3,7 @@ package com.faforever.iceadapter.gpgnet;
 import static com.faforever.iceadapter.debug.Debug.debug;
 
 import com.faforever.iceadapter.IceAdapter;
+import com.faforever.iceadapter.debug.EventJournal;
 import com.faforever.iceadapter.rpc.RPCService;
 import com.faforever.iceadapter.util.LockUtil;
 import com.faforever.iceadapter.util.NetworkToolbox;
@@ -10,10 +11,13 @@ import java.io.IOException;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedTransferQueue;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
@@ -90,14 +94,19 @@ public class GPGNetServer implements AutoCloseable {
         private final Thread listenerThread;
         private volatile boolean stopping = false;
         private FaDataOutputStream gpgnetOut;
-        private final Lock lockStream = new ReentrantLock();
+        // Messages to FA, written by the writer thread only
+        private final BlockingQueue<GpgnetMessage> sendQueue = new LinkedTransferQueue<>();
+        private Thread writerThread;
         private final CompletableFuture<GPGNetClient> lobbyFuture = new CompletableFuture<>();
 
+        private record GpgnetMessage(String command, Object[] args) {}
+
         private GPGNetClient(Socket socket) {
             this.socket = socket;
 
             try {
                 gpgnetOut = new FaDataOutputStream(socket.getOutputStream());
+                writerThread = Thread.ofVirtual().name("gpgnetWriter").start(this::writerThread);
             } catch (IOException e) {
                 log.error("Could not create GPGNet output steam to FA", e);
             }
@@ -111,6 +120,7 @@ public class GPGNetServer implements AutoCloseable {
          * Process an incoming message from FA
          */
         private void processGpgnetMessage(String command, List<Object> args) {
+            EventJournal.gpgnet(command, args);
             switch (command) {
                 case "GameState" -> {
                     gameState = GameState.getByName((String) args.get(0));
@@ -150,21 +160,45 @@ public class GPGNetServer implements AutoCloseable {
 
         /**
          * Send a message to this FA instance via GPGNet
+         * Does not block, the message is queued for the writer thread.
          */
         public void sendGpgnetMessage(String command, Object... args) {
-            LockUtil.executeWithLock(lockStream, () -> {
-                try {
-
-                    gpgnetOut.writeMessage(command, args);
-                    log.info(
-                            "Sent GPGNet message: {} {}",
-                            command,
-                            Arrays.stream(args).map(Object::toString).collect(Collectors.joining(" ")));
-                } catch (IOException e) {
-                    log.error("Error while communicating with FA (output), assuming shutdown", e);
-                    GPGNetServer.this.onGpgnetConnectionLost();
+            if (!stopping) {
+                sendQueue.add(new GpgnetMessage(command, args));
+            }
+        }
+
+        /**
+         * Writes all queued messages at once, so bursts (e.g. ConnectToPeer at lobby start) go out in a single write
+         */
+        private void writerThread() {
+            List<GpgnetMessage> batch = new ArrayList<>();
+            try {
+                while (!stopping) {
+                    batch.add(sendQueue.take());
+                    sendQueue.drainTo(batch);
+
+                    for (GpgnetMessage message : batch) {
+                        gpgnetOut.writeMessage(message.command(), message.args());
+                    }
+                    gpgnetOut.flush();
+
+                    for (GpgnetMessage message : batch) {
+                        log.info(
+                                "Sent GPGNet message: {} {}",
+                                message.command(),
+                                Arrays.stream(message.args())
+                                        .map(Object::toString)
+                                        .collect(Collectors.joining(" ")));
+                    }
+                    batch.clear();
                 }
-            });
+            } catch (InterruptedException e) {
+                log.debug("GPGNet writer interrupted, closing");
+            } catch (IOException e) {
+                log.error("Error while communicating with FA (output), assuming shutdown", e);
+                GPGNetServer.this.onGpgnetConnectionLost();
+            }
         }
 
         /**
@@ -200,6 +234,9 @@ public class GPGNetServer implements AutoCloseable {
         public void close() {
             stopping = true;
             this.listenerThread.interrupt();
+            if (writerThread != null) {
+                writerThread.interrupt();
+            }
             log.debug("Closing GPGNetClient");
 
             try {
@@ -0,0 +1,175 @@
+package com.faforever.iceadapter.ice;
+
+import com.faforever.iceadapter.IceAdapter;
+import com.faforever.iceadapter.debug.Debug;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+import lombok.extern.slf4j.Slf4j;
+import org.ice4j.TransportAddress;
+import org.ice4j.ice.Agent;
+import org.ice4j.ice.CandidateType;
+import org.ice4j.ice.Component;
+import org.ice4j.ice.LocalCandidate;
+import org.ice4j.ice.harvest.StunCandidateHarvester;
+import org.ice4j.ice.harvest.TurnCandidateHarvester;
+import org.ice4j.security.LongTermCredential;
+
+/**
+ * Adds STUN and TURN harvesters to an agent, which ice4j will run concurrently when creating the component.
+ * Every harvester is bounded by a deadline, so a single slow server does not delay gathering.
+ * As soon as a good enough set of candidates (host + srflx + relay) is available, all harvesters stop waiting.
+ * Harvests that did not finish in time keep running in the background, as ice4j cannot stop them. Their candidates are
+ * not offered, and once they finish their relayed candidates are freed, so the TURN allocations are not held for the
+ * whole session. Late srflx candidates only use the socket of their host candidate and are left alone.
+ */
+@Slf4j
+class CandidateHarvestPipeline {
+
+    private final Agent agent;
+    private final String logPrefix;
+    private final long harvesterDeadline;
+    private final boolean waitForAllHarvesters;
+
+    private final CompletableFuture<Void> goodEnough = new CompletableFuture<>();
+    private int stunHarvesters = 0;
+    private int turnHarvesters = 0;
+
+    CandidateHarvestPipeline(Agent agent, String logPrefix) {
+        this.agent = agent;
+        this.logPrefix = logPrefix;
+        this.harvesterDeadline = IceAdapter.getHarvesterDeadline();
+        this.waitForAllHarvesters = IceAdapter.isWaitForAllHarvesters();
+    }
+
+    void addStunServer(TransportAddress address) {
+        stunHarvesters++;
+        agent.addCandidateHarvester(new TimedStunCandidateHarvester(address));
+    }
+
+    void addTurnServer(TransportAddress address, LongTermCredential credential) {
+        turnHarvesters++;
+        agent.addCandidateHarvester(new TimedTurnCandidateHarvester(address, credential));
+    }
+
+    /**
+     * Runs the harvest on a separate thread and waits for it until the deadline or a good enough set is available
+     */
+    private Collection<LocalCandidate> harvest(
+            String type, TransportAddress address, Component component, Supplier<Collection<LocalCandidate>> harvest) {
+        long startTime = System.currentTimeMillis();
+
+        CompletableFuture<Collection<LocalCandidate>> harvestFuture =
+                CompletableFuture.supplyAsync(harvest, IceAdapter.getExecutor());
+        harvestFuture.whenComplete((candidates, throwable) -> {
+            long duration = System.currentTimeMillis() - startTime;
+            Debug.getHarvestTimes().record(duration);
+
+            if (throwable != null) {
+                log.warn("{} {} harvester for {} failed after {} ms", logPrefix, type, address, duration, throwable);
+                return;
+            }
+
+            log.info(
+                    "{} {} harvester for {} finished after {} ms, candidates: {}",
+                    logPrefix,
+                    type,
+                    address,
+                    duration,
+                    candidates == null ? 0 : candidates.size());
+            checkGoodEnough(component);
+        });
+
+        try {
+            CompletableFuture.anyOf(harvestFuture, goodEnough).get(harvesterDeadline, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            log.warn(
+                    "{} {} harvester for {} did not finish within {} ms, continuing without it",
+                    logPrefix,
+                    type,
+                    address,
+                    harvesterDeadline);
+        } catch (ExecutionException e) {
+            // already logged
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (harvestFuture.isDone()) {
+            return harvestFuture.isCompletedExceptionally() ? List.of() : harvestFuture.join();
+        }
+
+        harvestFuture.thenAccept(candidates -> freeLateRelayedCandidates(type, address, candidates));
+        return List.of();
+    }
+
+    private void freeLateRelayedCandidates(
+            String type, TransportAddress address, Collection<LocalCandidate> candidates) {
+        if (candidates == null) {
+            return;
+        }
+
+        List<LocalCandidate> relayedCandidates = candidates.stream()
+                .filter(candidate -> candidate.getType() == CandidateType.RELAYED_CANDIDATE)
+                .toList();
+        if (!relayedCandidates.isEmpty()) {
+            log.info(
+                    "{} Freeing {} relayed candidates of the late {} harvester for {}",
+                    logPrefix,
+                    relayedCandidates.size(),
+                    type,
+                    address);
+            relayedCandidates.forEach(LocalCandidate::free);
+        }
+    }
+
+    private void checkGoodEnough(Component component) {
+        if (waitForAllHarvesters || goodEnough.isDone()) {
+            return;
+        }
+
+        List<LocalCandidate> candidates = component.getLocalCandidates();
+        boolean hasHost = candidates.stream().anyMatch(c -> c.getType() == CandidateType.HOST_CANDIDATE);
+        boolean hasReflexive = stunHarvesters == 0
+                || candidates.stream().anyMatch(c -> c.getType() == CandidateType.SERVER_REFLEXIVE_CANDIDATE);
+        boolean hasRelay = turnHarvesters == 0
+                || candidates.stream().anyMatch(c -> c.getType() == CandidateType.RELAYED_CANDIDATE);
+
+        if (hasHost && hasReflexive && hasRelay) {
+            log.debug("{} Good enough candidates available, no longer waiting for other harvesters", logPrefix);
+            goodEnough.complete(null);
+        }
+    }
+
+    private class TimedStunCandidateHarvester extends StunCandidateHarvester {
+        private final TransportAddress address;
+
+        TimedStunCandidateHarvester(TransportAddress address) {
+            super(address);
+            this.address = address;
+        }
+
+        @Override
+        public Collection<LocalCandidate> harvest(Component component) {
+            return CandidateHarvestPipeline.this.harvest("STUN", address, component, () -> super.harvest(component));
+        }
+    }
+
+    private class TimedTurnCandidateHarvester extends TurnCandidateHarvester {
+        private final TransportAddress address;
+
+        TimedTurnCandidateHarvester(TransportAddress address, LongTermCredential credential) {
+            super(address, credential);
+            this.address = address;
+        }
+
+        @Override
+        public Collection<LocalCandidate> harvest(Component component) {
+            return CandidateHarvestPipeline.this.harvest("TURN", address, component, () -> super.harvest(component));
+        }
+    }
+}
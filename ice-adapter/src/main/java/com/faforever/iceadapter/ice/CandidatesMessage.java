@@ -1,13 +1,30 @@
 package com.faforever.iceadapter.ice;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import java.util.List;
 
 /**
  * Represents and IceMessage, consists out of candidates and ufrag aswell as password
+ * restart marks an offer for an ICE restart of a working connection, it is only sent to adapters that announced
+ * support for it (older adapters reject unknown properties) and is null otherwise
  */
 public record CandidatesMessage(
-        int srcId, int destId, String password, String ufrag, List<CandidatePacket> candidates) {
+        int srcId,
+        int destId,
+        String password,
+        String ufrag,
+        List<CandidatePacket> candidates,
+        @JsonInclude(JsonInclude.Include.NON_NULL) Boolean restart) {
     public CandidatesMessage {
         candidates = List.copyOf(candidates);
     }
+
+    public CandidatesMessage(
+            int srcId, int destId, String password, String ufrag, List<CandidatePacket> candidates) {
+        this(srcId, destId, password, ufrag, candidates, null);
+    }
+
+    public CandidatesMessage asRestart() {
+        return new CandidatesMessage(srcId, destId, password, ufrag, candidates, true);
+    }
 }
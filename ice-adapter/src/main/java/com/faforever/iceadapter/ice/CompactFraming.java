@@ -0,0 +1,70 @@
+package com.faforever.iceadapter.ice;
+
+/**
+ * Compact framing of the adapter to adapter packets, used instead of the ASCII prefixes if both adapters support it
+ * A packet starts with a type byte below 0x20 (never a valid ASCII prefix), its high nibble is the framing version.
+ * Numbers are unsigned varints (7 bits per byte, least significant group first), so sequence numbers, lengths and
+ * timestamps mostly take 1-3 bytes instead of fixed-size ints.
+ *
+ * <ul>
+ *   <li>SEQUENCED_DATA: sequence (varint), payload - replaces 's'
+ *   <li>ECHO: sequence (varint), send time in us (varint), echoed back unchanged - replaces 'e'
+ *   <li>PARITY: first sequence (varint), group size (byte), XOR of the lengths (varint), parity - replaces 'f'
+ *   <li>COALESCED: per packet its length (varint) and payload - replaces 'm'
+ * </ul>
+ */
+final class CompactFraming {
+
+    static final int VERSION = 1;
+
+    static final byte SEQUENCED_DATA = (VERSION << 4) | 1;
+    static final byte ECHO = (VERSION << 4) | 2;
+    static final byte PARITY = (VERSION << 4) | 3;
+    static final byte COALESCED = (VERSION << 4) | 4;
+
+    private CompactFraming() {}
+
+    static boolean isCompact(byte type) {
+        return (type & 0xF0) == VERSION << 4;
+    }
+
+    /**
+     * @return the number of bytes of the varint of the (unsigned) value
+     */
+    static int varintLength(long value) {
+        int length = 1;
+        while ((value >>>= 7) != 0) {
+            length++;
+        }
+        return length;
+    }
+
+    /**
+     * @return the offset after the varint
+     */
+    static int writeVarint(byte[] data, int offset, long value) {
+        while ((value & ~0x7FL) != 0) {
+            data[offset++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        data[offset++] = (byte) value;
+        return offset;
+    }
+
+    /**
+     * Reads a varint written by writeVarint, its length is varintLength of the value
+     *
+     * @return the value, -1 if the varint is truncated or too long
+     */
+    static long readVarint(byte[] data, int offset, int end) {
+        long value = 0;
+        for (int shift = 0; shift < 64 && offset < end; shift += 7) {
+            byte b = data[offset++];
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        return -1;
+    }
+}
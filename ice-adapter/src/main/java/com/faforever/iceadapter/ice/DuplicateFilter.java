@@ -0,0 +1,100 @@
+package com.faforever.iceadapter.ice;
+
+import java.util.Arrays;
+
+/**
+ * Detects duplicates of sequence numbered packets, which may arrive out of order and via several paths
+ * Remembers the sequence numbers within a sliding window behind the highest one received, and which of them were
+ * rebuilt from parity, as the late original of such a packet is no duplicate sent by the peer.
+ */
+class DuplicateFilter {
+
+    static final int WINDOW_SIZE = 1024;
+
+    private final long[] received = new long[WINDOW_SIZE / 64];
+    private final long[] recovered = new long[WINDOW_SIZE / 64];
+    private boolean empty = true;
+    private int highest;
+
+    /**
+     * @return whether the sequence number has not been seen before, it is marked as seen. Packets a full window or more
+     * behind the highest sequence number are rejected, see isStale
+     */
+    synchronized boolean accept(int sequence) {
+        if (isStale(sequence)) {
+            // Too old to tell whether it is a duplicate, must not move the window back
+            return false;
+        }
+        int distance = sequence - highest; // overflow safe
+        if (empty || distance >= WINDOW_SIZE) {
+            // First packet, or so far ahead that nothing in the window is relevant anymore
+            empty = false;
+            Arrays.fill(received, 0);
+            Arrays.fill(recovered, 0);
+            highest = sequence;
+            mark(received, sequence);
+            return true;
+        }
+
+        if (distance > 0) {
+            for (int i = 1; i < distance; i++) {
+                unmark(received, highest + i);
+                unmark(recovered, highest + i);
+            }
+            unmark(recovered, sequence);
+            highest = sequence;
+            mark(received, sequence);
+            return true;
+        }
+
+        if (isMarked(received, sequence)) {
+            return false;
+        }
+        mark(received, sequence);
+        return true;
+    }
+
+    /**
+     * Same as accept, for a packet rebuilt from parity
+     */
+    synchronized boolean acceptRecovered(int sequence) {
+        boolean accepted = accept(sequence);
+        if (accepted) {
+            mark(recovered, sequence);
+        }
+        return accepted;
+    }
+
+    /**
+     * @return whether the sequence number, which must have been rejected by accept, was rebuilt from parity
+     */
+    synchronized boolean isRecovered(int sequence) {
+        return !isStale(sequence) && isMarked(recovered, sequence);
+    }
+
+    /**
+     * @return whether the sequence number is a full window or more behind the highest one received
+     */
+    synchronized boolean isStale(int sequence) {
+        return !empty && sequence - highest <= -WINDOW_SIZE;
+    }
+
+    synchronized void reset() {
+        empty = true;
+    }
+
+    private static boolean isMarked(long[] bits, int sequence) {
+        int index = sequence & (WINDOW_SIZE - 1);
+        return (bits[index >>> 6] & (1L << index)) != 0;
+    }
+
+    private static void mark(long[] bits, int sequence) {
+        int index = sequence & (WINDOW_SIZE - 1);
+        bits[index >>> 6] |= 1L << index;
+    }
+
+    private static void unmark(long[] bits, int sequence) {
+        int index = sequence & (WINDOW_SIZE - 1);
+        bits[index >>> 6] &= ~(1L << index);
+    }
+}
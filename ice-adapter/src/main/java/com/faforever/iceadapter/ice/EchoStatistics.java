@@ -0,0 +1,96 @@
+package com.faforever.iceadapter.ice;
+
+import java.util.Arrays;
+
+/**
+ * RTT percentiles, jitter and loss of the echoes of a connectivity checker over a window of the most recent echoes
+ * Recording a sample does not allocate, the percentiles are only computed when requested
+ */
+public class EchoStatistics {
+
+    static final int WINDOW_SIZE = 64;
+    // Most recent echoes that may still be on their way and do not count as lost yet
+    private static final int LOSS_GRACE = 2;
+
+    public record Snapshot(float rttP50, float rttP95, float rttP99, float jitter, float packetLoss) {}
+
+    private final float[] rtts = new float[WINDOW_SIZE];
+    private final int[] answeredSequences = new int[WINDOW_SIZE];
+    private int samples = 0;
+    private int nextSequence = 0;
+    private float previousRtt = -1;
+    private float jitter = 0;
+
+    public EchoStatistics() {
+        Arrays.fill(answeredSequences, -1);
+    }
+
+    /**
+     * @return the sequence number for the next echo to send
+     */
+    synchronized int nextSequence() {
+        return nextSequence++;
+    }
+
+    /**
+     * @return the number of echoes sent since the statistics have been created
+     */
+    synchronized int getEchosSent() {
+        return nextSequence;
+    }
+
+    synchronized void record(int sequence, float rtt) {
+        if (sequence < 0 || sequence >= nextSequence || nextSequence - sequence > WINDOW_SIZE) {
+            return; // unknown or too old
+        }
+        if (answeredSequences[sequence % WINDOW_SIZE] == sequence) {
+            return; // duplicate
+        }
+        answeredSequences[sequence % WINDOW_SIZE] = sequence;
+
+        rtts[samples % WINDOW_SIZE] = rtt;
+        samples++;
+
+        // Interarrival jitter as in RFC 3550 6.4.1, using the RTT difference of consecutive echoes
+        if (previousRtt >= 0) {
+            jitter += (Math.abs(rtt - previousRtt) - jitter) / 16;
+        }
+        previousRtt = rtt;
+    }
+
+    /**
+     * @return fraction of echoes in the window that have not been answered
+     */
+    synchronized float getPacketLoss() {
+        int last = nextSequence - 1 - LOSS_GRACE;
+        int first = Math.max(0, nextSequence - WINDOW_SIZE);
+        if (last < first) {
+            return 0;
+        }
+
+        int lost = 0;
+        for (int sequence = first; sequence <= last; sequence++) {
+            if (answeredSequences[sequence % WINDOW_SIZE] != sequence) {
+                lost++;
+            }
+        }
+        return (float) lost / (last - first + 1);
+    }
+
+    public synchronized Snapshot snapshot() {
+        int count = Math.min(samples, WINDOW_SIZE);
+        float[] sorted = Arrays.copyOf(rtts, count);
+        Arrays.sort(sorted);
+        return new Snapshot(
+                percentile(sorted, 0.50), percentile(sorted, 0.95), percentile(sorted, 0.99), jitter, getPacketLoss());
+    }
+
+    private static float percentile(float[] sorted, double percentile) {
+        if (sorted.length == 0) {
+            return -1;
+        }
+        // Nearest rank
+        int rank = (int) Math.ceil(percentile * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+}
@@ -0,0 +1,126 @@
+package com.faforever.iceadapter.ice;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Reads from the FA sockets of all peers of a game session on a single selector thread
+ * Used instead of a blocking listener thread per peer when the selector data plane is enabled
+ */
+@Slf4j
+public class FaSocketSelector implements AutoCloseable {
+
+    // Datagrams read from one peer per select pass, so a flooding peer cannot starve the others
+    private static final int MAX_PACKETS_PER_SELECT = 64;
+
+    private final Selector selector;
+    private final Queue<Peer> pendingRegistrations = new ConcurrentLinkedQueue<>();
+
+    // Only used by the selector thread, starts with headroom for the ICE prefix and sequence header
+    private final byte[] data = new byte
+            [65536]; // 64KiB = UDP MTU, in practice due to ethernet frames being <= 1500 B, this is often not used
+    private final ByteBuffer buffer = ByteBuffer.wrap(data);
+
+    private final Thread selectorThread;
+
+    @SneakyThrows(IOException.class)
+    public FaSocketSelector() {
+        selector = Selector.open();
+        selectorThread = Thread.ofPlatform()
+                .name("faSocketSelector")
+                .daemon()
+                .uncaughtExceptionHandler((t, e) -> log.error("Thread {} crashed unexpectedly", t.getName(), e))
+                .start(this::selectorLoop);
+    }
+
+    /**
+     * Starts reading from the (non-blocking) FA channel of the peer
+     */
+    void register(Peer peer) {
+        pendingRegistrations.add(peer);
+        selector.wakeup();
+    }
+
+    private void selectorLoop() {
+        log.debug("Now forwarding data from FA to ICE for all peers");
+        try {
+            while (!Thread.currentThread().isInterrupted() && selector.isOpen()) {
+                selector.select(this::onReadable);
+                registerPendingPeers();
+            }
+        } catch (ClosedSelectorException e) {
+            // closed while selecting
+        } catch (IOException e) {
+            log.error("Error while selecting FA sockets", e);
+        }
+        log.debug("No longer listening for messages from FA");
+    }
+
+    private void registerPendingPeers() {
+        Peer peer;
+        while ((peer = pendingRegistrations.poll()) != null) {
+            try {
+                peer.getFaChannel().register(selector, SelectionKey.OP_READ, peer);
+            } catch (IOException e) {
+                log.warn("Could not register FA socket of peer {}", peer.getPeerIdentifier(), e);
+            }
+        }
+    }
+
+    private void onReadable(SelectionKey key) {
+        Peer peer = (Peer) key.attachment();
+        DatagramChannel channel = (DatagramChannel) key.channel();
+
+        try {
+            // Drain what is queued, the channel is selected again right away if more is left
+            for (int i = 0; i < MAX_PACKETS_PER_SELECT; i++) {
+                buffer.clear().position(PeerIceModule.FA_DATA_OFFSET);
+                if (channel.receive(buffer) == null) {
+                    return;
+                }
+                forward(peer, buffer.position() - PeerIceModule.FA_DATA_OFFSET);
+            }
+        } catch (IOException e) {
+            key.cancel();
+            if (peer.isClosing()) {
+                log.debug(
+                        "Ignoring error the receive packet because the connection was closed as peer {}",
+                        peer.getPeerIdentifier());
+            } else {
+                log.debug(
+                        "Error while reading from local FA as peer (probably disconnecting from peer) {}",
+                        peer.getPeerIdentifier(),
+                        e);
+            }
+        }
+    }
+
+    /**
+     * A failure of one peer's packet must not end the selector loop, it forwards the traffic of all peers
+     */
+    private void forward(Peer peer, int length) {
+        try {
+            peer.getIce().onFaDataReceived(data, length);
+        } catch (RuntimeException e) {
+            log.error("Failed to forward FA packet to peer {}, dropping it", peer.getPeerIdentifier(), e);
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            selector.close();
+        } catch (IOException e) {
+            log.error("Could not close FA socket selector", e);
+        }
+        selectorThread.interrupt();
+    }
+}
@@ -3,11 +3,13 @@ package com.faforever.iceadapter.ice;
 import static com.faforever.iceadapter.debug.Debug.debug;
 
 import com.faforever.iceadapter.IceAdapter;
+import com.faforever.iceadapter.debug.Debug;
 import com.faforever.iceadapter.telemetry.CoturnServer;
-import com.faforever.iceadapter.util.PingWrapper;
+import com.faforever.iceadapter.util.StunPinger;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
+import com.google.common.net.HostAndPort;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -49,7 +51,20 @@ public class GameSession {
     @Setter
     private volatile boolean gameEnded = false;
 
-    public GameSession() {}
+    // Reads from the FA sockets of all peers, only present when using the selector data plane
+    @Getter
+    private final FaSocketSelector faSocketSelector;
+
+    // Agents with candidates harvested in advance, empty unless enabled
+    @Getter
+    private final HarvestCache harvestCache;
+
+    public GameSession() {
+        faSocketSelector = IceAdapter.isSelectorDataPlane() ? new FaSocketSelector() : null;
+
+        harvestCache = new HarvestCache(IceAdapter.getHarvestCacheSize());
+        harvestCache.refill();
+    }
 
     /**
      * Initiates a connection to a peer (ICE)
@@ -100,20 +115,34 @@ public class GameSession {
      * Stops the connection to all peers and all ice agents
      */
     public void close() {
-        log.info("Closing gameSession");
+        log.info(
+                "Closing gameSession, ICE connect times: {}, harvest times: {}",
+                Debug.getConnectTimes(),
+                Debug.getHarvestTimes());
         peers.values().forEach(Peer::close);
         peers.clear();
+
+        if (faSocketSelector != null) {
+            faSocketSelector.close();
+        }
+
+        harvestCache.close();
     }
 
     @Getter
     private static final List<IceServer> iceServers = new ArrayList<>();
 
+    // Incremented whenever the ice servers change, candidates harvested before are outdated
+    @Getter
+    private static volatile int iceServersVersion = 0;
+
     /**
      * Set ice servers (to be used for harvesting candidates)
      * Called by the client via jsonRPC
      */
     public static void setIceServers(List<Map<String, Object>> iceServersData) {
         iceServers.clear();
+        iceServersVersion++;
 
         PUBLIC_STUN_SERVERS.forEach(stunServer -> {
             var iceServer = new IceServer();
@@ -122,16 +151,17 @@ public class GameSession {
         });
 
         if (iceServersData.isEmpty()) {
+            IceServerRanking.start(iceServers);
             return;
         }
 
-        // For caching RTT to a given host (the same host can appear in multiple urls)
-        LoadingCache<String, CompletableFuture<OptionalDouble>> hostRTTCache = CacheBuilder.newBuilder()
+        // For caching RTT to a given server (the same server can appear in multiple urls)
+        LoadingCache<HostAndPort, CompletableFuture<OptionalDouble>> serverRTTCache = CacheBuilder.newBuilder()
                 .build(new CacheLoader<>() {
                     @Override
-                    public CompletableFuture<OptionalDouble> load(String host) {
-                        return PingWrapper.getLatency(host, IceAdapter.getPingCount())
-                                .thenApply(OptionalDouble::of)
+                    public CompletableFuture<OptionalDouble> load(HostAndPort server) {
+                        return StunPinger.getLatency(server.getHost(), server.getPort(), IceAdapter.getPingCount())
+                                .thenApply(latency -> OptionalDouble.of(latency.avg()))
                                 .exceptionally(ex -> OptionalDouble.empty());
                     }
                 });
@@ -140,6 +170,7 @@ public class GameSession {
 
         for (Map<String, Object> iceServerData : iceServersData) {
             IceServer iceServer = new IceServer();
+            List<CompletableFuture<OptionalDouble>> roundTripTimes = new ArrayList<>();
 
             if (iceServerData.containsKey("username")) {
                 iceServer.setTurnUsername((String) iceServerData.get("username"));
@@ -187,19 +218,25 @@ public class GameSession {
                                 default -> log.warn("Invalid ICE server protocol: {}", uri);
                             }
 
-                            if (IceAdapter.getPingCount() > 0) {
-                                iceServer.setRoundTripTime(hostRTTCache.getUnchecked(host));
+                            // Binding requests are only answered via UDP, TCP urls often use other ports (e.g. 443)
+                            if (IceAdapter.getPingCount() > 0 && transport == Transport.UDP) {
+                                roundTripTimes.add(serverRTTCache.getUnchecked(HostAndPort.fromParts(host, port)));
                             }
 
                             coturnServers.add(new CoturnServer("n/a", host, port, null));
                         });
             }
 
+            if (!roundTripTimes.isEmpty()) {
+                iceServer.setRoundTripTime(getBestRoundTripTime(roundTripTimes));
+            }
             iceServers.add(iceServer);
         }
 
         debug().updateCoturnList(coturnServers);
 
+        IceServerRanking.start(iceServers);
+
         log.info(
                 "Ice Servers set, total addresses: {}",
                 iceServers.stream()
@@ -207,4 +244,17 @@ public class GameSession {
                                 + iceServer.getTurnAddresses().size())
                         .sum());
     }
+
+    /**
+     * @return the lowest RTT of the urls of a server, empty if none answered
+     */
+    private static CompletableFuture<OptionalDouble> getBestRoundTripTime(
+            List<CompletableFuture<OptionalDouble>> roundTripTimes) {
+        return CompletableFuture.allOf(roundTripTimes.toArray(CompletableFuture[]::new))
+                .thenApply(v -> roundTripTimes.stream()
+                        .map(CompletableFuture::join)
+                        .filter(OptionalDouble::isPresent)
+                        .mapToDouble(OptionalDouble::getAsDouble)
+                        .min());
+    }
 }
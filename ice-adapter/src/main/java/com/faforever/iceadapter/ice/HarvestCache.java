@@ -0,0 +1,157 @@
+package com.faforever.iceadapter.ice;
+
+import com.faforever.iceadapter.IceAdapter;
+import com.faforever.iceadapter.util.LockUtil;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import lombok.extern.slf4j.Slf4j;
+import org.ice4j.ice.Agent;
+import org.ice4j.ice.Component;
+import org.ice4j.ice.IceMediaStream;
+
+/**
+ * Harvests candidates for a number of agents in advance, so connecting to a peer does not have to wait for the STUN
+ * and TURN servers. Every agent binds its own sockets, so the srflx/relay mappings of one agent cannot be shared with
+ * another, instead whole agents are cached and handed out once.
+ * Harvested agents expire after a while, as NAT mappings are not kept alive until connectivity checks start.
+ */
+@Slf4j
+class HarvestCache implements AutoCloseable {
+
+    private static final String LOG_PREFIX = "[harvestCache]";
+    private static final long TIME_TO_LIVE = 30_000;
+    private static final long HARVEST_TIMEOUT = 5000;
+
+    private final int size;
+    private final Deque<HarvestedAgent> harvestedAgents = new ArrayDeque<>();
+    private final Lock lock = new ReentrantLock();
+    private int harvestsInProgress = 0;
+    private boolean closed = false;
+
+    HarvestCache(int size) {
+        this.size = size;
+    }
+
+    /**
+     * Takes a harvested agent out of the cache (if available) and starts harvesting a replacement
+     */
+    Optional<HarvestedAgent> poll() {
+        if (size <= 0) {
+            return Optional.empty();
+        }
+
+        Optional<HarvestedAgent> harvestedAgent = LockUtil.executeWithLock(lock, () -> {
+            HarvestedAgent candidate;
+            while ((candidate = harvestedAgents.pollFirst()) != null) {
+                if (isUsable(candidate)) {
+                    return Optional.of(candidate);
+                }
+                candidate.agent().free();
+            }
+            return Optional.empty();
+        });
+
+        refill();
+        return harvestedAgent;
+    }
+
+    /**
+     * Starts harvesting until the cache (including running harvests) is full
+     */
+    void refill() {
+        if (size <= 0) {
+            return;
+        }
+
+        LockUtil.executeWithLock(lock, () -> {
+            while (!closed && harvestedAgents.size() + harvestsInProgress < size) {
+                harvestsInProgress++;
+                CompletableFuture<HarvestedAgent> harvest =
+                        CompletableFuture.supplyAsync(this::harvest, IceAdapter.getExecutor());
+                // The timeout only completes the copy, the harvest itself keeps running and its agent has to be freed
+                harvest.copy()
+                        .orTimeout(HARVEST_TIMEOUT, TimeUnit.MILLISECONDS)
+                        .whenComplete((harvestedAgent, throwable) -> {
+                            if (throwable instanceof TimeoutException) {
+                                harvest.thenAccept(this::freeLateAgent);
+                            }
+                            onHarvested(harvestedAgent, throwable);
+                        });
+            }
+        });
+    }
+
+    private HarvestedAgent harvest() {
+        int iceServersVersion = GameSession.getIceServersVersion();
+        Agent agent = new Agent();
+        try {
+            IceMediaStream mediaStream = agent.createMediaStream("faData");
+            Component component = PeerIceModule.harvestComponent(agent, mediaStream, LOG_PREFIX);
+            return new HarvestedAgent(agent, mediaStream, component, iceServersVersion, System.currentTimeMillis());
+        } catch (Exception e) {
+            agent.free();
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void onHarvested(HarvestedAgent harvestedAgent, Throwable throwable) {
+        if (throwable != null) {
+            log.warn("{} Harvesting candidates in advance failed", LOG_PREFIX, throwable);
+        }
+
+        boolean cached = LockUtil.executeWithLock(lock, () -> {
+            harvestsInProgress--;
+            if (closed || harvestedAgent == null) {
+                return false;
+            }
+            harvestedAgents.addLast(harvestedAgent);
+            return true;
+        });
+
+        if (!cached) {
+            if (harvestedAgent != null) {
+                harvestedAgent.agent().free();
+            }
+            return;
+        }
+
+        log.debug("{} Harvested candidates in advance", LOG_PREFIX);
+        // Expired agents are only evicted, not replaced, so an idle game session stops allocating on the TURN servers
+        CompletableFuture.runAsync(
+                () -> evict(harvestedAgent),
+                CompletableFuture.delayedExecutor(TIME_TO_LIVE, TimeUnit.MILLISECONDS, IceAdapter.getExecutor()));
+    }
+
+    private void freeLateAgent(HarvestedAgent harvestedAgent) {
+        log.debug("{} Freeing agent harvested after the timeout", LOG_PREFIX);
+        harvestedAgent.agent().free();
+    }
+
+    private void evict(HarvestedAgent harvestedAgent) {
+        boolean removed = LockUtil.executeWithLock(lock, () -> harvestedAgents.remove(harvestedAgent));
+        if (removed) {
+            log.debug("{} Harvested agent expired", LOG_PREFIX);
+            harvestedAgent.agent().free();
+        }
+    }
+
+    private boolean isUsable(HarvestedAgent harvestedAgent) {
+        return harvestedAgent.iceServersVersion() == GameSession.getIceServersVersion()
+                && System.currentTimeMillis() - harvestedAgent.harvestTime() < TIME_TO_LIVE;
+    }
+
+    @Override
+    public void close() {
+        LockUtil.executeWithLock(lock, () -> {
+            closed = true;
+            harvestedAgents.forEach(harvestedAgent -> harvestedAgent.agent().free());
+            harvestedAgents.clear();
+        });
+    }
+}
@@ -0,0 +1,11 @@
+package com.faforever.iceadapter.ice;
+
+import org.ice4j.ice.Agent;
+import org.ice4j.ice.Component;
+import org.ice4j.ice.IceMediaStream;
+
+/**
+ * An agent whose local candidates have already been gathered, ready to be used for a peer
+ */
+record HarvestedAgent(
+        Agent agent, IceMediaStream mediaStream, Component component, int iceServersVersion, long harvestTime) {}
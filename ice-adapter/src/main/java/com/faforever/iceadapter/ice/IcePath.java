@@ -0,0 +1,15 @@
+package com.faforever.iceadapter.ice;
+
+import org.ice4j.TransportAddress;
+import org.ice4j.ice.CandidatePair;
+import org.ice4j.socket.IceSocketWrapper;
+
+/**
+ * The socket and remote address of a candidate pair, resolved once so data can be sent without walking the pair
+ */
+record IcePath(CandidatePair pair, IceSocketWrapper socket, TransportAddress remoteAddress) {
+
+    static IcePath of(CandidatePair pair) {
+        return new IcePath(pair, pair.getIceSocketWrapper(), pair.getRemoteCandidate().getTransportAddress());
+    }
+}
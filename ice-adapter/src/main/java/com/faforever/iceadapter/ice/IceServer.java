@@ -15,13 +15,23 @@ public class IceServer {
     private List<TransportAddress> turnAddresses = new ArrayList<>();
     private String turnUsername = "";
     private String turnCredential = "";
-    private CompletableFuture<OptionalDouble> roundTripTime = CompletableFuture.completedFuture(OptionalDouble.empty());
+    private volatile CompletableFuture<OptionalDouble> roundTripTime =
+            CompletableFuture.completedFuture(OptionalDouble.empty());
+    private volatile double packetLoss = 0.0;
 
     public static final Pattern urlPattern = Pattern.compile(
             "(?<protocol>stun|turn):(?<host>(\\w|\\.)+)(:(?<port>\\d+))?(\\?transport=(?<transport>(tcp|udp)))?");
 
+    /**
+     * Does not block, a server that has not been measured yet (or could not be measured) counts as acceptable
+     */
     public boolean hasAcceptableLatency() {
-        OptionalDouble rtt = this.getRoundTripTime().join();
+        OptionalDouble rtt =
+                this.getRoundTripTime().exceptionally(e -> OptionalDouble.empty()).getNow(OptionalDouble.empty());
         return rtt.isEmpty() || rtt.getAsDouble() < IceAdapter.getAcceptableLatency();
     }
+
+    public boolean hasAcceptablePacketLoss() {
+        return packetLoss < IceAdapter.getAcceptablePacketLoss();
+    }
 }
@@ -0,0 +1,163 @@
+package com.faforever.iceadapter.ice;
+
+import com.faforever.iceadapter.IceAdapter;
+import com.faforever.iceadapter.util.StunPinger;
+import com.google.common.net.HostAndPort;
+import java.util.Comparator;
+import java.util.List;
+import java.util.OptionalDouble;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import lombok.extern.slf4j.Slf4j;
+import org.ice4j.Transport;
+import org.ice4j.TransportAddress;
+
+/**
+ * Periodically re-measures RTT and packet loss of all relays and keeps them ranked, best first
+ * The ranking is published as an immutable snapshot, so reading it never blocks or locks
+ */
+@Slf4j
+final class IceServerRanking {
+
+    // More requests than the initial measurement, a single lost request would otherwise mean 100% loss
+    private static final int PROBE_COUNT = 5;
+    // Penalty in ms per 100% packet loss when ranking, 1% loss weighs as much as 10 ms RTT
+    private static final double PACKET_LOSS_PENALTY = 1000.0;
+
+    private static volatile List<IceServer> rankedIceServers = List.of();
+    // The servers the ranking is for, measurements of replaced servers are ignored
+    private static List<IceServer> currentIceServers = List.of();
+    private static Thread rankingThread;
+
+    private IceServerRanking() {}
+
+    /**
+     * @return all ice servers ordered by RTT and packet loss, best first, empty if not yet ranked
+     */
+    static List<IceServer> getRankedIceServers() {
+        return rankedIceServers;
+    }
+
+    /**
+     * Ranks the given ice servers right away and again as each initial latency measurement completes, then keeps
+     * re-measuring them. Servers that are not measured yet are ranked as just acceptable.
+     * Replaces the ranking of previously set ice servers, does nothing if latency measurement is disabled
+     */
+    static synchronized void start(List<IceServer> iceServers) {
+        if (rankingThread != null) {
+            rankingThread.interrupt();
+        }
+
+        rankedIceServers = List.of();
+        List<IceServer> servers = List.copyOf(iceServers);
+        currentIceServers = servers;
+        if (IceAdapter.getPingCount() <= 0) {
+            rankingThread = null;
+            return;
+        }
+
+        // A partial ranking is published per measurement, a single unreachable relay does not hold back the others
+        rank(servers);
+        servers.forEach(iceServer ->
+                iceServer.getRoundTripTime().whenComplete((rtt, throwable) -> rankIfCurrent(servers)));
+
+        rankingThread = Thread.ofVirtual()
+                .name("iceServerRanking")
+                .uncaughtExceptionHandler((t, e) -> log.error("Thread {} crashed unexpectedly", t.getName(), e))
+                .start(() -> rankingLoop(servers));
+    }
+
+    private static void rankingLoop(List<IceServer> iceServers) {
+        // Re-measuring starts once all initial measurements are done, they are ranked as they complete
+        CompletableFuture.allOf(iceServers.stream()
+                        .map(IceServer::getRoundTripTime)
+                        .toArray(CompletableFuture[]::new))
+                .exceptionally(e -> null)
+                .join();
+
+        int interval = IceAdapter.getIceServerProbeInterval();
+        if (interval <= 0) {
+            return;
+        }
+
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Thread.sleep(interval);
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            iceServers.stream()
+                    .filter(iceServer -> iceServer.getTurnAddresses().stream()
+                            .anyMatch(address -> address.getTransport() == Transport.UDP))
+                    .forEach(IceServerRanking::probe);
+            rankIfCurrent(iceServers);
+        }
+    }
+
+    /**
+     * Measures all UDP relay addresses of the server and keeps the values of the best one
+     */
+    private static void probe(IceServer iceServer) {
+        OptionalDouble bestRtt = OptionalDouble.empty();
+        double bestPacketLoss = 1.0;
+
+        for (HostAndPort server : iceServer.getTurnAddresses().stream()
+                .filter(address -> address.getTransport() == Transport.UDP)
+                .map(address -> HostAndPort.fromParts(address.getHostString(), address.getPort()))
+                .distinct()
+                .toList()) {
+            try {
+                StunPinger.Latency latency =
+                        StunPinger.getLatency(server.getHost(), server.getPort(), PROBE_COUNT).join();
+                double packetLoss = 1.0 - (double) latency.received() / latency.sent();
+                boolean better = bestRtt.isEmpty()
+                        || score(latency.avg(), packetLoss) < score(bestRtt.getAsDouble(), bestPacketLoss);
+                if (better) {
+                    bestRtt = OptionalDouble.of(latency.avg());
+                    bestPacketLoss = packetLoss;
+                }
+            } catch (Exception e) {
+                log.debug("Relay {} did not answer any request", server);
+            }
+        }
+
+        iceServer.setRoundTripTime(CompletableFuture.completedFuture(bestRtt));
+        iceServer.setPacketLoss(bestPacketLoss);
+    }
+
+    private static synchronized void rankIfCurrent(List<IceServer> iceServers) {
+        if (currentIceServers == iceServers) {
+            rank(iceServers);
+        }
+    }
+
+    private static void rank(List<IceServer> iceServers) {
+        rankedIceServers =
+                iceServers.stream().sorted(Comparator.comparingDouble(IceServerRanking::score)).toList();
+
+        log.info(
+                "Ranked ice servers: {}",
+                rankedIceServers.stream()
+                        .filter(it -> !it.getTurnAddresses().isEmpty())
+                        .map(it -> "["
+                                + it.getTurnAddresses().stream()
+                                        .map(TransportAddress::toString)
+                                        .collect(Collectors.joining(", "))
+                                + "] rtt: " + it.getRoundTripTime().getNow(OptionalDouble.empty())
+                                + ", loss: " + it.getPacketLoss())
+                        .collect(Collectors.joining(", ")));
+    }
+
+    private static double score(IceServer iceServer) {
+        // Unmeasured servers are ranked as if they were just acceptable
+        double rtt = iceServer.getRoundTripTime()
+                .getNow(OptionalDouble.empty())
+                .orElse(IceAdapter.getAcceptableLatency());
+        return score(rtt, iceServer.getPacketLoss());
+    }
+
+    private static double score(double rtt, double packetLoss) {
+        return rtt + packetLoss * PACKET_LOSS_PENALTY;
+    }
+}
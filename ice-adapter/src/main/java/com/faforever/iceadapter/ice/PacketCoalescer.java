@@ -0,0 +1,149 @@
+package com.faforever.iceadapter.ice;
+
+import com.faforever.iceadapter.IceAdapter;
+import com.faforever.iceadapter.util.LockUtil;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Packs packets from FA that are sent within a short window into a single ICE datagram
+ * Saves the per datagram overhead (especially via TURN) and packets counting towards relay rate limits, at the cost of
+ * delaying packets by up to the window.
+ * Format: 'm', then per packet its length (short) and payload. A batch of a single packet is sent as plain 'd'.
+ * With compact framing the batch starts with CompactFraming.COALESCED and the lengths are varints instead.
+ */
+class PacketCoalescer {
+
+    static final byte COALESCED_PREFIX = 'm';
+    static final int LENGTH_HEADER = 2;
+
+    private final PeerIceModule ice;
+    private final long windowMicros;
+
+    private final byte[] batch = new byte[PeerTrafficCounters.MAX_UNFRAGMENTED_PAYLOAD];
+    private final Lock lockBatch = new ReentrantLock();
+    private int batchLength = 0;
+    private int batchCount = 0;
+    private boolean batchCompact;
+    // Length of the length header of the first packet, to send a batch of a single packet as plain data
+    private int firstHeaderLength;
+    private int batchBytesSaved;
+    // Identifies the current batch, so a late flush does not cut the next batch short
+    private long batchId = 0;
+
+    PacketCoalescer(PeerIceModule ice, long windowMicros) {
+        this.ice = ice;
+        this.windowMicros = windowMicros;
+    }
+
+    /**
+     * Adds the packet to the current batch, starts a new batch if it does not fit anymore
+     *
+     * @param compactFraming whether the batch is built with compact framing, see CompactFraming
+     * @return false if the packet is too large to be coalesced, it has to be sent on its own
+     */
+    boolean add(byte[] data, int offset, int length, boolean compactFraming) {
+        if (1 + LENGTH_HEADER + length > batch.length) {
+            flush();
+            return false;
+        }
+
+        int headerLength = compactFraming ? CompactFraming.varintLength(length) : LENGTH_HEADER;
+        LockUtil.executeWithLock(lockBatch, () -> {
+            if (batchLength + headerLength + length > batch.length
+                    || (batchCount > 0 && batchCompact != compactFraming)) {
+                flushBatch();
+            }
+
+            if (batchCount == 0) {
+                batch[0] = compactFraming ? CompactFraming.COALESCED : COALESCED_PREFIX;
+                batchLength = 1;
+                batchCompact = compactFraming;
+                firstHeaderLength = headerLength;
+                batchBytesSaved = 0;
+                long id = ++batchId;
+                CompletableFuture.runAsync(
+                        () -> flush(id),
+                        CompletableFuture.delayedExecutor(
+                                windowMicros, TimeUnit.MICROSECONDS, IceAdapter.getExecutor()));
+            }
+
+            if (compactFraming) {
+                CompactFraming.writeVarint(batch, batchLength, length);
+                batchBytesSaved += LENGTH_HEADER - headerLength;
+            } else {
+                batch[batchLength] = (byte) (length >>> 8);
+                batch[batchLength + 1] = (byte) length;
+            }
+            System.arraycopy(data, offset, batch, batchLength + headerLength, length);
+            batchLength += headerLength + length;
+            batchCount++;
+        });
+        return true;
+    }
+
+    void flush() {
+        LockUtil.executeWithLock(lockBatch, this::flushBatch);
+    }
+
+    private void flush(long id) {
+        LockUtil.executeWithLock(lockBatch, () -> {
+            if (batchId == id) {
+                flushBatch();
+            }
+        });
+    }
+
+    private void flushBatch() {
+        if (batchCount == 0) {
+            return;
+        }
+
+        if (batchCount == 1) {
+            // Nothing to coalesce, replace the length header by the plain data prefix
+            batch[firstHeaderLength] = 'd';
+            ice.sendCoalesced(batch, firstHeaderLength, batchLength - firstHeaderLength, 1, 0);
+        } else {
+            ice.sendCoalesced(batch, 0, batchLength, batchCount, batchBytesSaved);
+        }
+
+        batchLength = 0;
+        batchCount = 0;
+    }
+
+    /**
+     * Splits a coalesced datagram into the packets for FA
+     *
+     * @return whether the datagram was well-formed, packets before a malformed entry are forwarded nevertheless
+     */
+    static boolean split(byte[] data, int length, boolean compactFraming, Peer peer) {
+        int offset = 1;
+        while (offset < length) {
+            int packetLength;
+            if (compactFraming) {
+                long varint = CompactFraming.readVarint(data, offset, length);
+                if (varint < 0 || varint > length) {
+                    return false;
+                }
+                packetLength = (int) varint;
+                offset += CompactFraming.varintLength(varint);
+            } else {
+                if (offset + LENGTH_HEADER > length) {
+                    return false;
+                }
+                packetLength = ((data[offset] & 0xFF) << 8) | (data[offset + 1] & 0xFF);
+                offset += LENGTH_HEADER;
+            }
+
+            if (offset + packetLength > length) {
+                return false;
+            }
+
+            peer.onIceDataReceived(data, offset, packetLength);
+            offset += packetLength;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,123 @@
+package com.faforever.iceadapter.ice;
+
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * Rebuilds a single lost packet of a group from the parity packet built by ParityEncoder
+ * Keeps copies of the most recently received sequenced payloads, as the group of a packet is only known once its
+ * parity arrives.
+ */
+class ParityDecoder {
+
+    static final int HISTORY_SIZE = 64;
+
+    // Allocated on first use, most peers never use parity
+    private final byte[][] payloads = new byte[HISTORY_SIZE][];
+    private final int[] lengths = new int[HISTORY_SIZE];
+    private final int[] sequences = new int[HISTORY_SIZE];
+    private final boolean[] present = new boolean[HISTORY_SIZE];
+
+    record RecoveredPacket(int sequence, byte[] payload) {}
+
+    synchronized void onDataReceived(int sequence, byte[] data, int offset, int length) {
+        int slot = sequence & (HISTORY_SIZE - 1);
+        if (length > ParityEncoder.MAX_PAYLOAD) {
+            present[slot] = false;
+            return;
+        }
+
+        if (payloads[slot] == null) {
+            payloads[slot] = new byte[ParityEncoder.MAX_PAYLOAD];
+        }
+        System.arraycopy(data, offset, payloads[slot], 0, length);
+        lengths[slot] = length;
+        sequences[slot] = sequence;
+        present[slot] = true;
+    }
+
+    /**
+     * @return the lost packet of the group, empty if none or more than one packet of the group is missing
+     */
+    synchronized Optional<RecoveredPacket> onParityReceived(byte[] parity, int length) {
+        if (length < ParityEncoder.PARITY_HEADER_LENGTH) {
+            return Optional.empty();
+        }
+
+        int firstSequence = PeerConnectivityCheckerModule.readInt(parity, 1);
+        int groupSize = parity[5] & 0xFF;
+        int lengths = ((parity[6] & 0xFF) << 8) | (parity[7] & 0xFF);
+        return recover(firstSequence, groupSize, lengths, parity, ParityEncoder.PARITY_HEADER_LENGTH, length);
+    }
+
+    /**
+     * Same as onParityReceived, for a parity packet with compact framing
+     */
+    synchronized Optional<RecoveredPacket> onCompactParityReceived(byte[] parity, int length) {
+        long firstSequence = CompactFraming.readVarint(parity, 1, length);
+        if (firstSequence < 0) {
+            return Optional.empty();
+        }
+        int offset = 1 + CompactFraming.varintLength(firstSequence);
+        if (offset >= length) {
+            return Optional.empty();
+        }
+        int groupSize = parity[offset++] & 0xFF;
+        long lengths = CompactFraming.readVarint(parity, offset, length);
+        if (lengths < 0 || lengths > 0xFFFF) {
+            return Optional.empty();
+        }
+        offset += CompactFraming.varintLength(lengths);
+        return recover((int) firstSequence, groupSize, (int) lengths, parity, offset, length);
+    }
+
+    /**
+     * @param offset the offset of the parity payload, after the header
+     */
+    private Optional<RecoveredPacket> recover(
+            int firstSequence, int groupSize, int recoveredLength, byte[] parity, int offset, int length) {
+        if (groupSize == 0 || groupSize > ParityEncoder.MAX_GROUP_SIZE || offset > length) {
+            return Optional.empty();
+        }
+
+        int missingSequence = 0;
+        int missing = 0;
+        for (int i = 0; i < groupSize; i++) {
+            int sequence = firstSequence + i;
+            int slot = sequence & (HISTORY_SIZE - 1);
+            if (!present[slot] || sequences[slot] != sequence) {
+                missingSequence = sequence;
+                missing++;
+            }
+        }
+        if (missing != 1) {
+            return Optional.empty();
+        }
+
+        int parityLength = length - offset;
+        byte[] payload = Arrays.copyOfRange(parity, offset, length);
+        for (int i = 0; i < groupSize; i++) {
+            int sequence = firstSequence + i;
+            if (sequence == missingSequence) {
+                continue;
+            }
+
+            int slot = sequence & (HISTORY_SIZE - 1);
+            byte[] received = payloads[slot];
+            for (int j = 0; j < Math.min(lengths[slot], parityLength); j++) {
+                payload[j] ^= received[j];
+            }
+            recoveredLength ^= lengths[slot];
+        }
+
+        if (recoveredLength > parityLength) {
+            // Corrupted or not matching the packets we received
+            return Optional.empty();
+        }
+        return Optional.of(new RecoveredPacket(missingSequence, Arrays.copyOf(payload, recoveredLength)));
+    }
+
+    synchronized void reset() {
+        Arrays.fill(present, false);
+    }
+}
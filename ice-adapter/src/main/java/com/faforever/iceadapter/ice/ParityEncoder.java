@@ -0,0 +1,117 @@
+package com.faforever.iceadapter.ice;
+
+/**
+ * Builds XOR parity packets over groups of consecutive sequenced data packets
+ * The parity allows the receiver to rebuild a single lost packet of a group, see ParityDecoder.
+ * Only used by the thread reading from the FA socket.
+ */
+class ParityEncoder {
+
+    static final byte PARITY_PREFIX = 'f';
+    // 'f', first sequence number of the group (int), group size (byte), XOR of the payload lengths (short)
+    static final int PARITY_HEADER_LENGTH = 8;
+    // Larger payloads are not protected, their group is dropped
+    static final int MAX_PAYLOAD = PeerTrafficCounters.MAX_UNFRAGMENTED_PAYLOAD - PARITY_HEADER_LENGTH;
+    static final int MAX_GROUP_SIZE = ParityDecoder.HISTORY_SIZE / 2;
+    // The header is written right in front of the parity, this fits the regular and the (larger) compact header
+    static final int PAYLOAD_OFFSET = 9;
+
+    private final int groupSize;
+    private final byte[] parity = new byte[PAYLOAD_OFFSET + MAX_PAYLOAD];
+    private int parityOffset = 0;
+
+    private int firstSequence;
+    private int count = 0;
+    private int lengths;
+    private int maxLength;
+
+    ParityEncoder(int groupSize) {
+        this.groupSize = Math.max(1, Math.min(groupSize, MAX_GROUP_SIZE));
+    }
+
+    /**
+     * Adds a sent packet to the current group
+     *
+     * @param compactFraming whether the parity packet is built with compact framing, see CompactFraming
+     * @return the length of the parity packet if the group is complete, see getParity(), 0 otherwise
+     */
+    int add(int sequence, byte[] data, int offset, int length, boolean compactFraming) {
+        if (length > MAX_PAYLOAD) {
+            reset();
+            return 0;
+        }
+        if (count > 0 && sequence != firstSequence + count) {
+            // Some packets were sent without parity in between, start a new group
+            reset();
+        }
+
+        if (count == 0) {
+            firstSequence = sequence;
+            lengths = 0;
+            maxLength = 0;
+        }
+
+        for (int i = 0; i < length; i++) {
+            if (i < maxLength) {
+                parity[PAYLOAD_OFFSET + i] ^= data[offset + i];
+            } else {
+                parity[PAYLOAD_OFFSET + i] = data[offset + i];
+            }
+        }
+        maxLength = Math.max(maxLength, length);
+        lengths ^= length;
+        count++;
+
+        if (count < groupSize) {
+            return 0;
+        }
+
+        parityOffset = compactFraming ? writeCompactHeader() : writeHeader();
+        count = 0;
+        return PAYLOAD_OFFSET - parityOffset + maxLength;
+    }
+
+    private int writeHeader() {
+        int start = PAYLOAD_OFFSET - PARITY_HEADER_LENGTH;
+        parity[start] = PARITY_PREFIX;
+        parity[start + 1] = (byte) (firstSequence >>> 24);
+        parity[start + 2] = (byte) (firstSequence >>> 16);
+        parity[start + 3] = (byte) (firstSequence >>> 8);
+        parity[start + 4] = (byte) firstSequence;
+        parity[start + 5] = (byte) count;
+        parity[start + 6] = (byte) (lengths >>> 8);
+        parity[start + 7] = (byte) lengths;
+        return start;
+    }
+
+    private int writeCompactHeader() {
+        long unsignedSequence = Integer.toUnsignedLong(firstSequence);
+        int start = PAYLOAD_OFFSET
+                - 2
+                - CompactFraming.varintLength(unsignedSequence)
+                - CompactFraming.varintLength(lengths);
+        parity[start] = CompactFraming.PARITY;
+        int offset = CompactFraming.writeVarint(parity, start + 1, unsignedSequence);
+        parity[offset] = (byte) count;
+        CompactFraming.writeVarint(parity, offset + 1, lengths);
+        return start;
+    }
+
+    /**
+     * The parity packet of the last completed group, starting at getParityOffset(), valid until the next call of add
+     */
+    byte[] getParity() {
+        return parity;
+    }
+
+    int getParityOffset() {
+        return parityOffset;
+    }
+
+    /**
+     * Drops the current group, e.g. when packets are not protected by parity for a while
+     */
+    void reset() {
+        count = 0;
+    }
+}
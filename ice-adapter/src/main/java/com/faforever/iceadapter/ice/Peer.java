@@ -5,6 +5,8 @@ import com.faforever.iceadapter.gpgnet.GPGNetServer;
 import com.faforever.iceadapter.util.LockUtil;
 import java.io.IOException;
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -29,7 +31,15 @@ public class Peer {
 
     private final PeerIceModule ice = new PeerIceModule(this);
     private final DatagramSocket faSocket; // Socket on which we are listening for FA / sending data to FA
+    private final DatagramChannel
+            faChannel; // Non-blocking channel backing the faSocket, only present when using the selector data plane
+    private final ByteBuffer faSendBuffer; // Reused for sending to FA via the faChannel, guarded by lockSocketSend
+    private final DatagramPacket faSendPacket; // Reused for sending to FA via the faSocket, guarded by lockSocketSend
     private final Lock lockSocketSend = new ReentrantLock();
+    // Rebuilt only if the lobby port changes, guarded by lockSocketSend
+    private InetSocketAddress lobbyAddress;
+
+    private final PeerTrafficCounters trafficCounters = new PeerTrafficCounters();
 
     public Peer(GameSession gameSession, int remoteId, String remoteLogin, boolean localOffer, int preferredPort) {
         this.gameSession = gameSession;
@@ -41,9 +51,19 @@ public class Peer {
         log.debug(
                 "Peer created: {}, localOffer: {}, preferredPort: {}", getPeerIdentifier(), localOffer, preferredPort);
 
-        faSocket = initForwarding(preferredPort);
-
-        CompletableFuture.runAsync(this::faListener, IceAdapter.getExecutor());
+        if (IceAdapter.isSelectorDataPlane()) {
+            faChannel = initSelectorForwarding(preferredPort);
+            faSocket = faChannel.socket();
+            faSendBuffer = ByteBuffer.allocateDirect(65536);
+            faSendPacket = null;
+            gameSession.getFaSocketSelector().register(this);
+        } else {
+            faChannel = null;
+            faSocket = initForwarding(preferredPort);
+            faSendBuffer = null;
+            faSendPacket = new DatagramPacket(new byte[0], 0);
+            CompletableFuture.runAsync(this::faListener, IceAdapter.getExecutor());
+        }
 
         if (localOffer) {
             CompletableFuture.runAsync(ice::initiateIce, IceAdapter.getExecutor());
@@ -69,6 +89,23 @@ public class Peer {
         }
     }
 
+    /**
+     * Opens a non-blocking channel for FA, which will be read by the {@link FaSocketSelector} of the game session
+     */
+    @SneakyThrows(IOException.class)
+    private DatagramChannel initSelectorForwarding(int port) {
+        try {
+            DatagramChannel channel = DatagramChannel.open();
+            channel.bind(new InetSocketAddress(port));
+            channel.configureBlocking(false);
+            log.debug("Now forwarding data to peer {}", getPeerIdentifier());
+            return channel;
+        } catch (IOException e) {
+            log.error("Could not create channel for peer: {}", getPeerIdentifier(), e);
+            throw e;
+        }
+    }
+
     /**
      * Forwards data received on ICE to FA
      * @param data
@@ -78,11 +115,23 @@ public class Peer {
     void onIceDataReceived(byte[] data, int offset, int length) {
         LockUtil.executeWithLock(lockSocketSend, () -> {
             try {
-                DatagramPacket packet = new DatagramPacket(
-                        data, offset, length, InetAddress.getByName("127.0.0.1"), GPGNetServer.getLobbyPort());
-                faSocket.send(packet);
-            } catch (UnknownHostException e) {
+                int lobbyPort = GPGNetServer.getLobbyPort();
+                if (lobbyAddress == null || lobbyAddress.getPort() != lobbyPort) {
+                    lobbyAddress = new InetSocketAddress("127.0.0.1", lobbyPort);
+                }
+
+                if (faChannel != null) {
+                    faSendBuffer.clear();
+                    faSendBuffer.put(data, offset, length).flip();
+                    faChannel.send(faSendBuffer, lobbyAddress);
+                } else {
+                    faSendPacket.setData(data, offset, length);
+                    faSendPacket.setSocketAddress(lobbyAddress);
+                    faSocket.send(faSendPacket);
+                }
+                trafficCounters.onForwardedToFa(length);
             } catch (IOException e) {
+                trafficCounters.onSendFailureToFa();
                 if (closing) {
                     log.debug(
                             "Ignoring error the send packet because the connection was closed {}", getPeerIdentifier());
@@ -102,9 +151,12 @@ public class Peer {
     private void faListener() {
         byte[] data = new byte
                 [65536]; // 64KiB = UDP MTU, in practice due to ethernet frames being <= 1500 B, this is often not used
+        // Receive with headroom for the ICE prefix and sequence header so the data does not need to be copied
+        DatagramPacket packet = new DatagramPacket(
+                data, PeerIceModule.FA_DATA_OFFSET, data.length - PeerIceModule.FA_DATA_OFFSET);
         while (!Thread.currentThread().isInterrupted() && IceAdapter.getGameSession() == gameSession && !closing) {
             try {
-                DatagramPacket packet = new DatagramPacket(data, data.length);
+                packet.setLength(data.length - PeerIceModule.FA_DATA_OFFSET);
                 faSocket.receive(packet);
                 ice.onFaDataReceived(data, packet.getLength());
             } catch (IOException e) {
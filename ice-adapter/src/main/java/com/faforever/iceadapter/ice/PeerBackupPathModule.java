@@ -0,0 +1,251 @@
+package com.faforever.iceadapter.ice;
+
+import com.faforever.iceadapter.util.LockUtil;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.ice4j.ice.CandidatePair;
+import org.ice4j.ice.CandidatePairState;
+import org.ice4j.ice.CandidateType;
+import org.ice4j.ice.Component;
+import org.ice4j.ice.IceMediaStream;
+import org.ice4j.ice.RelayedCandidate;
+import org.ice4j.socket.IceSocketWrapper;
+
+/**
+ * Keeps the other validated candidate pairs of a connection warm as backups for the selected pair
+ * Backups are kept alive by keepalives ('k'), which the peer answers on the same path ('K'), so only paths that
+ * recently worked are used for a failover.
+ * Listens on the sockets of all validated pairs, so the answering peer can follow a failover of the offering peer.
+ */
+@Slf4j
+public class PeerBackupPathModule {
+
+    static final byte KEEPALIVE_PREFIX = 'k';
+    static final byte KEEPALIVE_REPLY_PREFIX = 'K';
+
+    private static final int KEEPALIVE_INTERVAL = 2000;
+    // A backup is only used for a failover if it answered a keepalive within this time
+    private static final int MAX_REPLY_AGE = 3 * KEEPALIVE_INTERVAL;
+
+    private final PeerIceModule ice;
+    private final Component component;
+    private final int maxBackupPaths;
+
+    private final List<BackupPath> backupPaths = new ArrayList<>();
+    private final Lock lockBackupPaths = new ReentrantLock();
+    private final List<PeerTurnRefreshModule> turnRefreshModules = new ArrayList<>();
+    private volatile boolean running = true;
+
+    @Getter
+    private volatile int backupPathCount = 0;
+
+    // The best backup that recently answered a keepalive, null if there is none
+    @Getter
+    private volatile IcePath warmBackupPath;
+
+    private static class BackupPath {
+        private final IcePath path;
+        private volatile long lastReply = 0;
+
+        private BackupPath(IcePath path) {
+            this.path = path;
+        }
+    }
+
+    public PeerBackupPathModule(
+            PeerIceModule ice, IceMediaStream mediaStream, Component component, int maxBackupPaths) {
+        this.ice = ice;
+        this.component = component;
+        this.maxBackupPaths = maxBackupPaths;
+
+        start(mediaStream, ice.getSelectedPath());
+    }
+
+    private void start(IceMediaStream mediaStream, IcePath selectedPath) {
+        CandidatePair selectedPair = selectedPath.pair();
+        List<IcePath> validatedPaths = List.copyOf(mediaStream.getCheckList()).stream()
+                .filter(pair -> pair.getParentComponent() == component)
+                .filter(pair -> pair.getState() == CandidatePairState.SUCCEEDED)
+                .filter(pair -> pair != selectedPair)
+                .map(IcePath::of)
+                .filter(path -> path.socket() != null)
+                .filter(path -> !isSameRoute(path, selectedPath))
+                .toList();
+
+        // Prefer paths that do not share the local socket (e.g. another relay), then the ICE priority
+        List<IcePath> rankedPaths = validatedPaths.stream()
+                .sorted(Comparator.<IcePath, Boolean>comparing(path -> path.socket() == selectedPath.socket())
+                        .thenComparing(path -> path.pair().getPriority(), Comparator.reverseOrder()))
+                .limit(maxBackupPaths)
+                .toList();
+
+        LockUtil.executeWithLock(lockBackupPaths, () -> {
+            rankedPaths.forEach(path -> backupPaths.add(new BackupPath(path)));
+            backupPathCount = backupPaths.size();
+        });
+
+        rankedPaths.stream()
+                .filter(path -> path.pair().getLocalCandidate().getType() == CandidateType.RELAYED_CANDIDATE)
+                .map(path -> (RelayedCandidate) path.pair().getLocalCandidate())
+                .distinct()
+                .filter(candidate -> candidate != selectedPair.getLocalCandidate())
+                .forEach(candidate -> turnRefreshModules.add(new PeerTurnRefreshModule(ice, candidate)));
+
+        // The peer may fail over to any validated pair, listen on all of their sockets
+        validatedPaths.stream()
+                .map(IcePath::socket)
+                .filter(socket -> socket != selectedPath.socket())
+                .distinct()
+                .forEach(socket -> Thread.ofVirtual()
+                        .name(ice.getListenerThreadName() + "-backup")
+                        .start(() -> ice.listener(component, socket)));
+
+        if (!rankedPaths.isEmpty()) {
+            Thread.ofVirtual()
+                    .name("backupKeepalive-" + ice.getPeer().getRemoteId())
+                    .uncaughtExceptionHandler((t, e) -> log.error("Thread {} crashed unexpectedly", t.getName(), e))
+                    .start(this::keepaliveThread);
+        }
+
+        log.info(
+                "{} Keeping {} backup paths: {}",
+                ice.getLogPrefix(),
+                rankedPaths.size(),
+                rankedPaths.stream().map(PeerBackupPathModule::describe).toList());
+    }
+
+    private void keepaliveThread() {
+        byte[] keepalive = {KEEPALIVE_PREFIX};
+        DatagramPacket packet = new DatagramPacket(keepalive, keepalive.length);
+
+        while (running) {
+            for (BackupPath backupPath : getBackupPaths()) {
+                try {
+                    packet.setSocketAddress(backupPath.path.remoteAddress());
+                    backupPath.path.socket().send(packet);
+                } catch (IOException e) {
+                    log.warn("{} Backup path {} failed, removing it", ice.getLogPrefix(), describe(backupPath.path));
+                    remove(backupPath);
+                }
+            }
+            LockUtil.executeWithLock(lockBackupPaths, this::updateWarmBackupPath);
+
+            try {
+                Thread.sleep(KEEPALIVE_INTERVAL);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Answers a keepalive of the peer on the path it was received on
+     */
+    static void answerKeepalive(IceSocketWrapper socket, DatagramPacket packet) {
+        try {
+            socket.send(new DatagramPacket(
+                    new byte[] {KEEPALIVE_REPLY_PREFIX}, 1, packet.getAddress(), packet.getPort()));
+        } catch (IOException e) {
+            log.debug("Could not answer keepalive from {}", packet.getSocketAddress(), e);
+        }
+    }
+
+    void onKeepaliveReplyReceived(IceSocketWrapper socket, DatagramPacket packet) {
+        findBackupPath(socket, packet.getAddress(), packet.getPort())
+                .ifPresent(backupPath -> backupPath.lastReply = System.currentTimeMillis());
+    }
+
+    /**
+     * Switches from the current path to the best backup that recently answered, the current path becomes a backup
+     *
+     * @return the new path, empty if no backup is available
+     */
+    Optional<IcePath> failover(IcePath currentPath) {
+        long now = System.currentTimeMillis();
+        return LockUtil.executeWithLock(lockBackupPaths, () -> {
+            Optional<BackupPath> backupPath = backupPaths.stream()
+                    .filter(it -> now - it.lastReply < MAX_REPLY_AGE)
+                    .findFirst();
+            backupPath.ifPresent(it -> {
+                backupPaths.remove(it);
+                backupPaths.add(new BackupPath(currentPath));
+                updateWarmBackupPath();
+            });
+            return backupPath.map(it -> it.path);
+        });
+    }
+
+    /**
+     * The peer uses a backup path (it failed over), switches to it as well
+     *
+     * @return the path the packet has been received on, if it is a backup path
+     */
+    Optional<IcePath> follow(IcePath currentPath, IceSocketWrapper socket, InetAddress address, int port) {
+        return LockUtil.executeWithLock(lockBackupPaths, () -> {
+            Optional<BackupPath> backupPath = findBackupPath(socket, address, port);
+            backupPath.ifPresent(it -> {
+                backupPaths.remove(it);
+                BackupPath previous = new BackupPath(currentPath);
+                previous.lastReply = it.lastReply;
+                backupPaths.add(previous);
+                updateWarmBackupPath();
+            });
+            return backupPath.map(it -> it.path);
+        });
+    }
+
+    private Optional<BackupPath> findBackupPath(IceSocketWrapper socket, InetAddress address, int port) {
+        return getBackupPaths().stream()
+                .filter(it -> it.path.socket() == socket
+                        && it.path.remoteAddress().getPort() == port
+                        && it.path.remoteAddress().getAddress().equals(address))
+                .findFirst();
+    }
+
+    private void updateWarmBackupPath() {
+        long now = System.currentTimeMillis();
+        warmBackupPath = backupPaths.stream()
+                .filter(it -> now - it.lastReply < MAX_REPLY_AGE)
+                .map(it -> it.path)
+                .findFirst()
+                .orElse(null);
+    }
+
+    private List<BackupPath> getBackupPaths() {
+        return LockUtil.executeWithLock(lockBackupPaths, () -> List.copyOf(backupPaths));
+    }
+
+    private void remove(BackupPath backupPath) {
+        LockUtil.executeWithLock(lockBackupPaths, () -> {
+            backupPaths.remove(backupPath);
+            backupPathCount = backupPaths.size();
+            updateWarmBackupPath();
+        });
+    }
+
+    private static boolean isSameRoute(IcePath path, IcePath other) {
+        return path.socket() == other.socket() && path.remoteAddress().equals(other.remoteAddress());
+    }
+
+    private static String describe(IcePath path) {
+        return path.pair().getLocalCandidate().getType() + " <-> "
+                + path.pair().getRemoteCandidate().getType() + " (" + path.remoteAddress() + ")";
+    }
+
+    public void close() {
+        // Not interrupted, interrupting a virtual thread blocked on a socket closes the socket shared with the agent
+        running = false;
+        // The listeners of the backup sockets stop once the agent is freed
+        turnRefreshModules.forEach(PeerTurnRefreshModule::close);
+        turnRefreshModules.clear();
+    }
+}
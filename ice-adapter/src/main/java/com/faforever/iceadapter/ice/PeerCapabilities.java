@@ -0,0 +1,110 @@
+package com.faforever.iceadapter.ice;
+
+import com.faforever.iceadapter.IceAdapter;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Optional features that both adapters of a connection need to support, negotiated in-band via hello packets
+ * A hello is 'h', the capability bits (int), flags (byte) and the compact framing version (byte, 0 if not supported).
+ * Older adapters drop hellos as invalid packets, so a peer that never answers is assumed to support nothing.
+ * Fields may be appended, readers must accept longer hellos.
+ */
+final class PeerCapabilities {
+
+    static final byte HELLO_PREFIX = 'h';
+    static final int HELLO_LENGTH = 6;
+    private static final int FLAG_REPLY_REQUESTED = 1;
+
+    // Make-before-break ICE restarts, see PeerIceModule#onConnectionDegraded
+    static final int ICE_RESTART = 1;
+    // Failover to backup candidate pairs kept alive by keepalives, see PeerBackupPathModule
+    static final int FAILOVER = 2;
+    // Duplicated data packets with a sequence header ('s'), see PeerIceModule#setPacketDuplication
+    static final int PACKET_DUPLICATION = 4;
+    // XOR parity packets ('f') over groups of sequenced data packets, see ParityEncoder
+    static final int FORWARD_ERROR_CORRECTION = 8;
+    // Several packets from FA in one datagram ('m'), see PacketCoalescer
+    static final int COALESCING = 16;
+    // Compact framing, see CompactFraming, the version is part of the hello
+    static final int COMPACT_FRAMING = 32;
+
+    private PeerCapabilities() {}
+
+    /**
+     * @return the capabilities enabled for the local adapter
+     */
+    static int getLocalCapabilities() {
+        int capabilities = 0;
+        if (IceAdapter.isIceRestart()) {
+            capabilities |= ICE_RESTART;
+        }
+        if (IceAdapter.getBackupPairs() > 0) {
+            capabilities |= FAILOVER;
+        }
+        if (IceAdapter.isPacketDuplication()) {
+            capabilities |= PACKET_DUPLICATION;
+        }
+        if (IceAdapter.getFecGroupSize() > 0) {
+            capabilities |= FORWARD_ERROR_CORRECTION;
+        }
+        if (IceAdapter.getCoalescingWindow() > 0) {
+            capabilities |= COALESCING;
+        }
+        if (IceAdapter.isCompactFraming()) {
+            capabilities |= COMPACT_FRAMING;
+        }
+        return capabilities;
+    }
+
+    static byte[] hello(int capabilities, boolean replyRequested) {
+        return ByteBuffer.allocate(HELLO_LENGTH + 1)
+                .put(HELLO_PREFIX)
+                .putInt(capabilities)
+                .put((byte) (replyRequested ? FLAG_REPLY_REQUESTED : 0))
+                .put((byte) ((capabilities & COMPACT_FRAMING) != 0 ? CompactFraming.VERSION : 0))
+                .array();
+    }
+
+    static int readCapabilities(byte[] hello) {
+        return ByteBuffer.wrap(hello, 1, 4).getInt();
+    }
+
+    static boolean isReplyRequested(byte[] hello) {
+        return (hello[5] & FLAG_REPLY_REQUESTED) != 0;
+    }
+
+    /**
+     * @return the compact framing version, 0 if the peer does not support it
+     */
+    static int readFramingVersion(byte[] hello, int length) {
+        if (length <= HELLO_LENGTH || (readCapabilities(hello) & COMPACT_FRAMING) == 0) {
+            return 0;
+        }
+        return hello[HELLO_LENGTH] & 0xFF;
+    }
+
+    static String toString(int capabilities) {
+        List<String> names = new ArrayList<>();
+        if ((capabilities & ICE_RESTART) != 0) {
+            names.add("ice restart");
+        }
+        if ((capabilities & FAILOVER) != 0) {
+            names.add("failover");
+        }
+        if ((capabilities & PACKET_DUPLICATION) != 0) {
+            names.add("packet duplication");
+        }
+        if ((capabilities & FORWARD_ERROR_CORRECTION) != 0) {
+            names.add("forward error correction");
+        }
+        if ((capabilities & COALESCING) != 0) {
+            names.add("coalescing");
+        }
+        if ((capabilities & COMPACT_FRAMING) != 0) {
+            names.add("compact framing");
+        }
+        return names.toString();
+    }
+}
@@ -4,8 +4,6 @@ import static com.faforever.iceadapter.debug.Debug.debug;
 
 import com.faforever.iceadapter.IceAdapter;
 import com.faforever.iceadapter.util.LockUtil;
-import com.google.common.primitives.Longs;
-import java.util.Arrays;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -20,6 +18,24 @@ import lombok.extern.slf4j.Slf4j;
 public class PeerConnectivityCheckerModule {
 
     private static final int ECHO_INTERVAL = 1000;
+    // Echo interval while the peer is suspected to be gone, to confirm or refute the suspicion quickly
+    private static final int FAST_ECHO_INTERVAL = 200;
+    // Phi above which the peer is suspected, probed faster and the selected path failed over to a backup (if any)
+    private static final double SUSPICION_PHI = 1.0;
+    // Silence below which the selected path is never suspected, regardless of phi
+    private static final int FAILOVER_SILENCE = 600;
+    // The connection is never aborted before this much silence, regardless of phi
+    private static final int MIN_SILENCE = 2000;
+    // The connection is always aborted after this much silence, regardless of phi
+    private static final int MAX_SILENCE = 10000;
+    // Echo loss at which the connection is considered degraded and ICE is restarted (if supported)
+    private static final float DEGRADED_PACKET_LOSS = 0.2f;
+    // Echoes needed before the loss is meaningful enough to restart ICE
+    private static final int DEGRADED_MIN_ECHOS = 20;
+    // 'e' prefix, send time in ns (long) and sequence number (int), echoed back unchanged by the answerer
+    static final int ECHO_LENGTH = 13;
+    // With compact framing: type, sequence number and send time in us (varints), see CompactFraming
+    private static final int MAX_COMPACT_ECHO_LENGTH = 1 + 5 + 10;
 
     private final PeerIceModule ice;
     private final Lock lockIce = new ReentrantLock();
@@ -30,7 +46,7 @@ public class PeerConnectivityCheckerModule {
     private float averageRTT = 0.0f;
 
     @Getter
-    private long lastPacketReceived;
+    private volatile long lastPacketReceived;
 
     @Getter
     private long echosReceived = 0;
@@ -38,6 +54,17 @@ public class PeerConnectivityCheckerModule {
     @Getter
     private long invalidEchosReceived = 0;
 
+    @Getter
+    private volatile EchoStatistics echoStatistics = new EchoStatistics();
+
+    // Fed by echo replies only, game packets arrive every few ms and would make a short hiccup look like a dead peer
+    private volatile PhiAccrualFailureDetector failureDetector = new PhiAccrualFailureDetector();
+
+    // Only used by the checker thread
+    private final byte[] echoData = new byte[Math.max(ECHO_LENGTH, MAX_COMPACT_ECHO_LENGTH)];
+    // Reference of the send times of compact echoes, keeps them small
+    private final long startTime = System.nanoTime();
+
     public PeerConnectivityCheckerModule(PeerIceModule ice) {
         this.ice = ice;
     }
@@ -52,7 +79,10 @@ public class PeerConnectivityCheckerModule {
             log.debug("Starting connectivity checker for peer {}", ice.getPeer().getRemoteId());
 
             averageRTT = 0.0f;
-            lastPacketReceived = System.currentTimeMillis();
+            echoStatistics = new EchoStatistics();
+            failureDetector = new PhiAccrualFailureDetector();
+            heartbeat();
+            failureDetector.heartbeat(lastPacketReceived);
 
             checkerThread = Thread.ofVirtual()
                     .name(getThreadName())
@@ -81,28 +111,66 @@ public class PeerConnectivityCheckerModule {
     }
 
     /**
-     * an echo has been received, RTT and last_received will be updated
+     * Proof of life of the peer, any packet received via ICE counts (game data included)
+     * Only ends the silence, the failure detector learns from the regular echo replies, see echoReceived.
+     */
+    void heartbeat() {
+        if (!running) {
+            return;
+        }
+
+        lastPacketReceived = System.currentTimeMillis();
+    }
+
+    /**
+     * an echo has been received, RTT, jitter, loss and last_received will be updated
      * @param data
      * @param offset
      * @param length
      */
     void echoReceived(byte[] data, int offset, int length) {
         echosReceived++;
+        heartbeat();
+        failureDetector.heartbeat(lastPacketReceived);
 
-        if (length != 9) {
+        if (data[offset] == CompactFraming.ECHO) {
+            compactEchoReceived(data, offset, length);
+            return;
+        }
+
+        if (length != ECHO_LENGTH) {
             log.trace("Received echo of wrong length, length: {}", length);
             invalidEchosReceived++;
+            return;
+        }
+
+        float rtt = (System.nanoTime() - readLong(data, offset + 1)) / 1_000_000.0f;
+        onEcho(readInt(data, offset + 9), rtt);
+    }
+
+    private void compactEchoReceived(byte[] data, int offset, int length) {
+        int end = offset + length;
+        long sequence = CompactFraming.readVarint(data, offset + 1, end);
+        long sendTime = sequence < 0
+                ? -1
+                : CompactFraming.readVarint(data, offset + 1 + CompactFraming.varintLength(sequence), end);
+        if (sendTime < 0) {
+            log.trace("Received malformed compact echo, length: {}", length);
+            invalidEchosReceived++;
+            return;
         }
 
-        int rtt =
-                (int) (System.currentTimeMillis() - Longs.fromByteArray(Arrays.copyOfRange(data, offset + 1, length)));
+        float rtt = ((System.nanoTime() - startTime) / 1000 - sendTime) / 1000.0f;
+        onEcho((int) sequence, rtt);
+    }
+
+    private void onEcho(int sequence, float rtt) {
         if (averageRTT == 0) {
             averageRTT = rtt;
         } else {
-            averageRTT = (float) averageRTT * 0.8f + (float) rtt * 0.2f;
+            averageRTT = (float) averageRTT * 0.8f + rtt * 0.2f;
         }
-
-        lastPacketReceived = System.currentTimeMillis();
+        echoStatistics.record(sequence, rtt);
 
         debug().peerConnectivityUpdate(ice.getPeer());
         //      System.out.printf("Received echo from %d after %d ms, averageRTT: %d ms", ice.getPeer().getRemoteId(),
@@ -110,38 +178,105 @@ public class PeerConnectivityCheckerModule {
     }
 
     private void checkerThread() {
+        long lastEchoSent = 0;
         while (!Thread.currentThread().isInterrupted() && running) {
             log.trace("Running connectivity checker");
 
             Peer peer = ice.getPeer();
-            byte[] data = new byte[9];
-            data[0] = 'e';
+            long now = System.currentTimeMillis();
+            double phi = failureDetector.phi(now);
+            long silence = now - lastPacketReceived;
+
+            if (silence > MAX_SILENCE || (silence >= MIN_SILENCE && phi > IceAdapter.getPhiThreshold())) {
+                log.warn(
+                        "Didn't receive anything for the past {} ms (phi: {}) from {}, aborting connection",
+                        silence,
+                        "%.1f".formatted(phi),
+                        peer.getRemoteLogin());
+                CompletableFuture.runAsync(ice::onConnectionLost, IceAdapter.getExecutor());
+                return;
+            }
 
-            // Copy current time (long, 8 bytes) into array after leading prefix indicating echo
-            System.arraycopy(Longs.toByteArray(System.currentTimeMillis()), 0, data, 1, 8);
+            if (silence >= FAILOVER_SILENCE && phi > SUSPICION_PHI) {
+                ice.onPathSuspected(silence);
+            }
+
+            if (echoStatistics.getEchosSent() >= DEGRADED_MIN_ECHOS) {
+                float packetLoss = echoStatistics.getPacketLoss();
+                ice.onPacketLossMeasured(packetLoss);
+                if (packetLoss >= DEGRADED_PACKET_LOSS) {
+                    ice.onConnectionDegraded("%.0f%% echo loss".formatted(packetLoss * 100));
+                }
+            }
 
-            ice.sendViaIce(data, 0, data.length);
+            // Echoes are sent at the regular interval for RTT statistics, faster while the peer is suspected
+            int echoInterval = phi > SUSPICION_PHI ? FAST_ECHO_INTERVAL : ECHO_INTERVAL;
+            if (now - lastEchoSent >= echoInterval) {
+                ice.sendViaIce(echoData, 0, writeEcho());
+                lastEchoSent = now;
 
-            debug().peerConnectivityUpdate(peer);
+                debug().peerConnectivityUpdate(peer);
+            }
 
             try {
-                Thread.sleep(ECHO_INTERVAL);
+                Thread.sleep(FAST_ECHO_INTERVAL);
             } catch (InterruptedException e) {
                 log.warn(
                         "{} (sleeping checkerThread) was interrupted",
                         Thread.currentThread().getName());
                 return;
             }
-
-            if (System.currentTimeMillis() - lastPacketReceived > 10000) {
-                log.warn(
-                        "Didn't receive any answer to echo requests for the past 10 seconds from {}, aborting connection",
-                        peer.getRemoteLogin());
-                CompletableFuture.runAsync(ice::onConnectionLost, IceAdapter.getExecutor());
-                return;
-            }
         }
 
         log.info("{} stopped gracefully", Thread.currentThread().getName());
     }
+
+    /**
+     * @return the length of the echo
+     */
+    private int writeEcho() {
+        if (ice.isCompactFraming()) {
+            echoData[0] = CompactFraming.ECHO;
+            int offset =
+                    CompactFraming.writeVarint(echoData, 1, Integer.toUnsignedLong(echoStatistics.nextSequence()));
+            offset = CompactFraming.writeVarint(echoData, offset, (System.nanoTime() - startTime) / 1000);
+            ice.getPeer().getTrafficCounters().onFramingSaved(ECHO_LENGTH - offset);
+            return offset;
+        }
+
+        echoData[0] = 'e';
+        writeLong(echoData, 1, System.nanoTime());
+        writeInt(echoData, 9, echoStatistics.nextSequence());
+        return ECHO_LENGTH;
+    }
+
+    private static void writeLong(byte[] data, int offset, long value) {
+        for (int i = 7; i >= 0; i--) {
+            data[offset + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    static void writeInt(byte[] data, int offset, int value) {
+        for (int i = 3; i >= 0; i--) {
+            data[offset + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    private static long readLong(byte[] data, int offset) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (data[offset + i] & 0xFF);
+        }
+        return value;
+    }
+
+    static int readInt(byte[] data, int offset) {
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            value = (value << 8) | (data[offset + i] & 0xFF);
+        }
+        return value;
+    }
 }
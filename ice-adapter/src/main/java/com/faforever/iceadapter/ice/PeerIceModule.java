@@ -4,6 +4,7 @@ import static com.faforever.iceadapter.debug.Debug.debug;
 import static com.faforever.iceadapter.ice.IceState.*;
 
 import com.faforever.iceadapter.IceAdapter;
+import com.faforever.iceadapter.debug.EventJournal;
 import com.faforever.iceadapter.rpc.RPCService;
 import com.faforever.iceadapter.util.CandidateUtil;
 import com.faforever.iceadapter.util.LockUtil;
@@ -11,20 +12,24 @@ import com.faforever.iceadapter.util.TrayIcon;
 import java.io.IOException;
 import java.net.DatagramPacket;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.ice4j.TransportAddress;
 import org.ice4j.ice.*;
-import org.ice4j.ice.harvest.StunCandidateHarvester;
-import org.ice4j.ice.harvest.TurnCandidateHarvester;
 import org.ice4j.security.LongTermCredential;
+import org.ice4j.socket.IceSocketWrapper;
 
 @Getter
 @Slf4j
@@ -54,6 +59,19 @@ public class PeerIceModule {
             2 * 60 * 1000; // 2 mins, the interval in which multiple connects have to happen to force srflx/relay
     private static final int FORCE_SRFLX_COUNT = 1;
     private static final int FORCE_RELAY_COUNT = 2;
+    private static final long ICE_TIMEOUT = 15_000; // ms until connectivity checks are aborted
+    private static final long RESTART_COOLDOWN = 30_000; // ms between two ICE restarts due to degradation
+    private static final long RESTART_GRACE = 5_000; // ms the previous agent keeps receiving after an ICE restart
+    private static final int CAPABILITY_ANNOUNCEMENTS = 5; // hellos sent per connection until the peer answers
+    private static final long FAILOVER_COOLDOWN = 1_000; // ms between two failovers to a backup path
+    private static final long DUPLICATE_SPACING = 10; // ms between a packet and its copy sent via the same path
+    private static final long DUPLICATION_MIRROR_TIMEOUT = 2_000; // ms without duplicates until the answerer stops
+
+    // Headroom in front of the payload passed to onFaDataReceived, fits the prefix and the (compact) sequence header
+    static final int FA_DATA_OFFSET = 6;
+    // Data with a sequence header, used for packet duplication and parity: 's', sequence number (int), payload
+    static final byte SEQUENCED_DATA_PREFIX = 's';
+    private static final int SEQUENCE_HEADER_LENGTH = 5;
 
     private final Peer peer;
 
@@ -63,10 +81,51 @@ public class PeerIceModule {
 
     private volatile IceState iceState = NEW;
     private volatile boolean connected = false;
+    // Seconds it took the connectivity checks of the current connection to complete, -1 if not connected yet
+    private volatile double timeToConnected = -1.0;
     private volatile Thread listenerThread;
 
+    // The path of the selected candidate pair, cached so the hot send path does not need to resolve it per packet
+    private volatile IcePath selectedPath;
+    // The pair ice4j selected last, differs from the one of selectedPath after a failover
+    private volatile CandidatePair iceSelectedPair;
+    // Sockets of pairs ice4j selected for the current agent, each is read by a listener
+    private final Set<IceSocketWrapper> selectedPairSockets = ConcurrentHashMap.newKeySet();
+    // Reused for every packet forwarded from FA, only ever touched by the thread reading from the FA socket
+    @Getter(AccessLevel.NONE)
+    private final DatagramPacket faForwardPacket = new DatagramPacket(new byte[0], 0);
+
     private PeerTurnRefreshModule turnRefreshModule;
 
+    // Keeps other validated candidate pairs alive for a failover, null if not used for the current connection
+    private volatile PeerBackupPathModule backupPathModule;
+    private volatile long lastFailoverTime = 0;
+    // Whether a send failure already triggered onConnectionLost, further failures until then are not dispatched again
+    private final AtomicBoolean sendFailureHandled = new AtomicBoolean(false);
+
+    // Whether data is sent twice with a sequence header, enabled while the echo loss is high
+    private volatile boolean packetDuplication = false;
+    private volatile long lastDuplicateReceived = 0;
+    // Only touched by the thread reading from the FA socket
+    @Getter(AccessLevel.NONE)
+    private int dataSequence = 0;
+
+    @Getter(AccessLevel.NONE)
+    private final DuplicateFilter duplicateFilter = new DuplicateFilter();
+
+    // Packs packets from FA into fewer datagrams, null if disabled
+    @Getter(AccessLevel.NONE)
+    private final PacketCoalescer packetCoalescer = IceAdapter.getCoalescingWindow() > 0
+            ? new PacketCoalescer(this, IceAdapter.getCoalescingWindow())
+            : null;
+
+    // Only touched by the thread reading from the FA socket
+    @Getter(AccessLevel.NONE)
+    private final ParityEncoder parityEncoder = new ParityEncoder(IceAdapter.getFecGroupSize());
+
+    @Getter(AccessLevel.NONE)
+    private final ParityDecoder parityDecoder = new ParityDecoder();
+
     // Checks the connection by sending echo requests and initiates a reconnect if needed
     private final PeerConnectivityCheckerModule connectivityChecker = new PeerConnectivityCheckerModule(this);
 
@@ -75,9 +134,21 @@ public class PeerIceModule {
     // How often have we been waiting for a response to local candidates/offer
     private final AtomicInteger awaitingCandidatesEventId = new AtomicInteger(0);
 
+    // Agent negotiated in parallel to the working connection during an ICE restart, null if none is in progress
+    private volatile HarvestedAgent restartAgent;
+    private volatile long lastRestartTime = 0;
+
+    // Capabilities announced by the remote adapter (see PeerCapabilities), -1 as long as it did not announce any
+    private volatile int remoteCapabilities = -1;
+    // Compact framing version announced by the remote adapter, 0 if none
+    private volatile int remoteFramingVersion = 0;
+
     private final Lock lockInit = new ReentrantLock();
     private final Lock lockLostConnection = new ReentrantLock();
     private final Lock lockMessageReceived = new ReentrantLock();
+    private final Lock lockRestart = new ReentrantLock();
+    private final Lock lockBackupPaths = new ReentrantLock();
+    private final Lock lockPathSwitch = new ReentrantLock();
 
     public PeerIceModule(Peer peer) {
         this.peer = peer;
@@ -90,6 +161,7 @@ public class PeerIceModule {
      */
     private void setState(IceState newState) {
         this.iceState = newState;
+        EventJournal.iceState(peer.getRemoteId(), newState.getMessage());
         rpcService.onIceConnectionStateChanged(IceAdapter.getId(), peer.getRemoteId(), iceState.getMessage());
         debug().peerStateChanged(this.peer);
     }
@@ -115,57 +187,91 @@ public class PeerIceModule {
             setState(GATHERING);
             log.info("{} Initiating ICE for peer", getLogPrefix());
 
-            createAgent();
             gatherCandidates();
         });
     }
 
     /**
-     * Creates an agent and media stream for handling the ICE
+     * Uses an agent whose candidates have been harvested for the connection, replacing the current one
      */
-    private void createAgent() {
+    private void useHarvestedAgent(HarvestedAgent harvestedAgent) {
         if (agent != null) {
             agent.free();
         }
 
-        agent = new Agent();
+        agent = harvestedAgent.agent();
         agent.setControlling(peer.isLocalOffer());
 
-        mediaStream = agent.createMediaStream("faData");
+        mediaStream = harvestedAgent.mediaStream();
+        component = harvestedAgent.component();
     }
 
     /**
      * Gathers all local candidates, packs them into a message and sends them to the other peer via RPC
      */
     private void gatherCandidates() {
+        Optional<HarvestedAgent> harvestedAgent = obtainHarvestedAgent();
+        if (harvestedAgent.isEmpty()) {
+            CompletableFuture.runAsync(this::onConnectionLost, IceAdapter.getExecutor());
+            return;
+        }
+        useHarvestedAgent(harvestedAgent.get());
+
+        setState(AWAITING_CANDIDATES);
+        rpcService.onIceMsg(packLocalCandidates(agent, component));
+
+        // Make sure to abort the connection process and reinitiate when we haven't received an answer to our offer in 6
+        // seconds, candidate packet was probably lost
+        final int currentAwaitingCandidatesEventId = awaitingCandidatesEventId.incrementAndGet();
+        CompletableFuture.runAsync(
+                () -> {
+                    if (peer.isClosing()) {
+                        log.warn(
+                                "{} Peer {} not connected anymore, aborting reinitiation of ICE",
+                                getLogPrefix(),
+                                peer.getRemoteId());
+                        return;
+                    }
+                    if (iceState == AWAITING_CANDIDATES
+                            && currentAwaitingCandidatesEventId == awaitingCandidatesEventId.get()) {
+                        onConnectionLost();
+                    }
+                },
+                CompletableFuture.delayedExecutor(6000, TimeUnit.MILLISECONDS, IceAdapter.getExecutor()));
+    }
+
+    /**
+     * Takes an agent from the harvest cache or creates a new one and gathers its candidates
+     *
+     * @return the agent with all local candidates, empty if gathering failed or timed out
+     */
+    private Optional<HarvestedAgent> obtainHarvestedAgent() {
         log.info("{} Gathering ice candidates", getLogPrefix());
+        long gatheringStartTime = System.currentTimeMillis();
 
-        // For STUN all servers are relevant (latency is not an issue)
-        GameSession.getIceServers().stream()
-                .flatMap(s -> s.getStunAddresses().stream())
-                .forEach(address -> {
-                    log.info("{} Add STUN harvester for {}", getLogPrefix(), address.getHostName());
-                    agent.addCandidateHarvester(new StunCandidateHarvester(address));
-                });
+        Optional<HarvestedAgent> harvestedAgent = peer.getGameSession().getHarvestCache().poll();
+        if (harvestedAgent.isPresent()) {
+            log.info("{} Using candidates harvested in advance", getLogPrefix());
+        } else {
+            harvestedAgent = harvestNewAgent();
+        }
 
-        // TURN is latency sensitive
-        List<IceServer> iceServers = getViableIceServers();
-        iceServers.forEach(iceServer -> iceServer.getTurnAddresses().forEach(address -> {
-            var harvester = new TurnCandidateHarvester(
-                    address, new LongTermCredential(iceServer.getTurnUsername(), iceServer.getTurnCredential()));
-            log.info("{} Add TURN harvester for {}", getLogPrefix(), address.getHostName());
-            agent.addCandidateHarvester(harvester);
-        }));
+        harvestedAgent.ifPresent(it -> log.info(
+                "{} Gathered candidates in {} ms", getLogPrefix(), System.currentTimeMillis() - gatheringStartTime));
+        return harvestedAgent;
+    }
 
-        CompletableFuture<Void> gatheringFuture = CompletableFuture.runAsync(
+    /**
+     * Creates a new agent and harvests its candidates
+     */
+    private Optional<HarvestedAgent> harvestNewAgent() {
+        Agent newAgent = new Agent();
+        IceMediaStream newMediaStream = newAgent.createMediaStream("faData");
+
+        CompletableFuture<Component> gatheringFuture = CompletableFuture.supplyAsync(
                 () -> {
                     try {
-                        component = agent.createComponent(
-                                mediaStream,
-                                MINIMUM_PORT
-                                        + (int) (ThreadLocalRandom.current().nextDouble() * 999.0),
-                                MINIMUM_PORT,
-                                MINIMUM_PORT + 1000);
+                        return harvestComponent(newAgent, newMediaStream, getLogPrefix());
                     } catch (IOException e) {
                         throw new RuntimeException(e);
                     }
@@ -181,25 +287,35 @@ public class PeerIceModule {
                 CompletableFuture.delayedExecutor(5000, TimeUnit.MILLISECONDS, IceAdapter.getExecutor()));
 
         try {
-            gatheringFuture.join();
+            Component newComponent = gatheringFuture.join();
+            return Optional.of(new HarvestedAgent(
+                    newAgent,
+                    newMediaStream,
+                    newComponent,
+                    GameSession.getIceServersVersion(),
+                    System.currentTimeMillis()));
         } catch (CompletionException e) {
             // Completed exceptionally
             log.error("{} Error while creating stream component/gathering candidates", getLogPrefix(), e);
-            CompletableFuture.runAsync(this::onConnectionLost, IceAdapter.getExecutor());
-            return;
         } catch (CancellationException e) {
             // was cancelled due to timeout
             log.error("{} Gathering candidates timed out", getLogPrefix(), e);
-            CompletableFuture.runAsync(this::onConnectionLost, IceAdapter.getExecutor());
-            return;
         }
 
+        newAgent.free();
+        return Optional.empty();
+    }
+
+    /**
+     * Packs the allowed local candidates of the agent into a message for the other peer
+     */
+    private CandidatesMessage packLocalCandidates(Agent localAgent, Component localComponent) {
         long previousConnectivityAttempts = getConnectivityAttempsInThePast(FORCE_SRFLX_RELAY_INTERVAL);
         CandidatesMessage localCandidatesMessage = CandidateUtil.packCandidates(
                 IceAdapter.getId(),
                 peer.getRemoteId(),
-                agent,
-                component,
+                localAgent,
+                localComponent,
                 previousConnectivityAttempts < FORCE_SRFLX_COUNT && ALLOW_HOST,
                 previousConnectivityAttempts < FORCE_RELAY_COUNT && ALLOW_REFLEXIVE,
                 ALLOW_RELAY);
@@ -210,38 +326,57 @@ public class PeerIceModule {
                 localCandidatesMessage.candidates().stream()
                         .map(it -> it.type().toString() + "(" + it.protocol() + ")")
                         .collect(Collectors.joining(", ")));
-        setState(AWAITING_CANDIDATES);
-        rpcService.onIceMsg(localCandidatesMessage);
+        return localCandidatesMessage;
+    }
 
-        // Make sure to abort the connection process and reinitiate when we haven't received an answer to our offer in 6
-        // seconds, candidate packet was probably lost
-        final int currentAwaitingCandidatesEventId = awaitingCandidatesEventId.incrementAndGet();
-        CompletableFuture.runAsync(
-                () -> {
-                    if (peer.isClosing()) {
-                        log.warn(
-                                "{} Peer {} not connected anymore, aborting reinitiation of ICE",
-                                getLogPrefix(),
-                                peer.getRemoteId());
-                        return;
-                    }
-                    if (iceState == AWAITING_CANDIDATES
-                            && currentAwaitingCandidatesEventId == awaitingCandidatesEventId.get()) {
-                        onConnectionLost();
-                    }
-                },
-                CompletableFuture.delayedExecutor(6000, TimeUnit.MILLISECONDS, IceAdapter.getExecutor()));
+    /**
+     * Adds the STUN and viable TURN servers to the agent and creates the component, thereby harvesting all candidates
+     */
+    static Component harvestComponent(Agent agent, IceMediaStream mediaStream, String logPrefix) throws IOException {
+        CandidateHarvestPipeline harvestPipeline = new CandidateHarvestPipeline(agent, logPrefix);
+
+        // For STUN all servers are relevant (latency is not an issue)
+        GameSession.getIceServers().stream()
+                .flatMap(s -> s.getStunAddresses().stream())
+                .forEach(address -> {
+                    log.info("{} Add STUN harvester for {}", logPrefix, address.getHostName());
+                    harvestPipeline.addStunServer(address);
+                });
+
+        // TURN is latency sensitive
+        List<IceServer> iceServers = getViableIceServers();
+        iceServers.forEach(iceServer -> iceServer.getTurnAddresses().forEach(address -> {
+            log.info("{} Add TURN harvester for {}", logPrefix, address.getHostName());
+            harvestPipeline.addTurnServer(
+                    address, new LongTermCredential(iceServer.getTurnUsername(), iceServer.getTurnCredential()));
+        }));
+
+        return agent.createComponent(
+                mediaStream,
+                MINIMUM_PORT + (int) (ThreadLocalRandom.current().nextDouble() * 999.0),
+                MINIMUM_PORT,
+                MINIMUM_PORT + 1000);
     }
 
-    private List<IceServer> getViableIceServers() {
-        List<IceServer> allIceServers = GameSession.getIceServers();
-        if (IceAdapter.getPingCount() <= 0 || allIceServers.isEmpty()) {
+    private static List<IceServer> getViableIceServers() {
+        if (IceAdapter.getPingCount() <= 0) {
+            return GameSession.getIceServers();
+        }
+
+        // A snapshot, servers still being measured at lobby start count as acceptable
+        List<IceServer> allIceServers = IceServerRanking.getRankedIceServers();
+        if (allIceServers.isEmpty()) {
+            allIceServers = GameSession.getIceServers();
+        }
+        if (allIceServers.isEmpty()) {
             return allIceServers;
         }
 
-        // Try servers with acceptable latency
-        List<IceServer> viableIceServers =
-                allIceServers.stream().filter(IceServer::hasAcceptableLatency).collect(Collectors.toList());
+        // Try servers with acceptable latency and packet loss, best first
+        List<IceServer> viableIceServers = allIceServers.stream()
+                .filter(IceServer::hasAcceptableLatency)
+                .filter(IceServer::hasAcceptablePacketLoss)
+                .collect(Collectors.toList());
         if (!viableIceServers.isEmpty()) {
             log.info(
                     "Using all viable ice servers: {}",
@@ -290,6 +425,17 @@ public class PeerIceModule {
                                         .collect(Collectors.joining(", ")));
 
                         if (peer.isLocalOffer()) {
+                            HarvestedAgent localRestartAgent = restartAgent;
+                            if (localRestartAgent != null && iceState == CONNECTED) {
+                                // Answer to our ICE restart offer
+                                if (localRestartAgent.agent().getState() == IceProcessingState.WAITING) {
+                                    runRestartChecks(localRestartAgent, remoteCandidatesMessage);
+                                } else {
+                                    log.warn("{} Received answer to ICE restart unexpectedly", getLogPrefix());
+                                }
+                                return;
+                            }
+
                             if (iceState != AWAITING_CANDIDATES) {
                                 log.warn(
                                         "{} Received candidates unexpectedly, current state: {}",
@@ -299,6 +445,14 @@ public class PeerIceModule {
                             }
 
                         } else {
+                            if (Boolean.TRUE.equals(remoteCandidatesMessage.restart())
+                                    && iceState == CONNECTED
+                                    && IceAdapter.isIceRestart()) {
+                                // Keep forwarding via the current connection while negotiating the new one
+                                answerRestart(remoteCandidatesMessage);
+                                return;
+                            }
+
                             // Check if we are already processing an ICE offer and if so stop it
                             if (iceState != NEW && iceState != DISCONNECTED) {
                                 log.info("{} Received new candidates/offer, stopping...", getLogPrefix());
@@ -329,46 +483,76 @@ public class PeerIceModule {
 
     /**
      * Runs the actual connectivity establishment, candidates have been exchanged and need to be checked
+     * Does not block, the result is handled by {@link #onIceProcessingOver} once the agent completes, fails or times out
      */
     private void startIce() {
         connectivityAttemptTimes.add(0, System.currentTimeMillis());
 
         log.debug("{} Starting ICE for peer {}", getLogPrefix(), peer.getRemoteId());
-        agent.startConnectivityEstablishment();
 
-        // Wait for termination/completion of the agent
+        Agent localAgent = agent;
         long iceStartTime = System.currentTimeMillis();
-        while (!Thread.currentThread().isInterrupted()
-                && agent.getState()
-                        != IceProcessingState
-                                .COMPLETED) { // TODO include more?, maybe stop on COMPLETED, is that to early?
-            try {
-                Thread.sleep(20);
-            } catch (InterruptedException e) {
-                log.error("{} Interrupted while waiting for ICE", getLogPrefix(), e);
-                onConnectionLost();
-                return;
-            }
+        runConnectivityChecks(localAgent)
+                .whenCompleteAsync(
+                        (state, throwable) -> onIceProcessingOver(localAgent, state, throwable, iceStartTime),
+                        IceAdapter.getExecutor());
+    }
 
-            if (agent.getState() == IceProcessingState.FAILED) { // TODO null pointer due to no agent?
-                onConnectionLost();
-                return;
+    /**
+     * Starts the connectivity checks of the agent
+     *
+     * @return completes once the agent completed or failed, times out after {@link #ICE_TIMEOUT}
+     */
+    private static CompletableFuture<IceProcessingState> runConnectivityChecks(Agent localAgent) {
+        CompletableFuture<IceProcessingState> processingOver = new CompletableFuture<>();
+        localAgent.addStateChangeListener(event -> {
+            if (Agent.PROPERTY_ICE_PROCESSING_STATE.equals(event.getPropertyName())
+                    && event.getNewValue() instanceof IceProcessingState state
+                    && state.isOver()) {
+                processingOver.complete(state);
             }
+        });
 
-            if (System.currentTimeMillis() - iceStartTime > 15_000) {
-                log.error("{} ABORTING ICE DUE TO TIMEOUT", getLogPrefix());
-                onConnectionLost();
-                return;
-            }
+        localAgent.startConnectivityEstablishment();
+        return processingOver.orTimeout(ICE_TIMEOUT, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * The agent completed, failed or timed out, will either start forwarding data or initiate a reconnect
+     */
+    private void onIceProcessingOver(
+            Agent localAgent, IceProcessingState state, Throwable throwable, long iceStartTime) {
+        if (agent != localAgent) {
+            log.debug("{} ICE agent has been replaced while checking, ignoring its result", getLogPrefix());
+            return;
+        }
+
+        if (throwable instanceof TimeoutException) {
+            log.error("{} ABORTING ICE DUE TO TIMEOUT", getLogPrefix());
+            onConnectionLost();
+            return;
         }
 
+        if (throwable != null || state != IceProcessingState.COMPLETED) {
+            log.warn("{} ICE did not complete, state: {}", getLogPrefix(), state, throwable);
+            onConnectionLost();
+            return;
+        }
+
+        long timeToConnect = System.currentTimeMillis() - iceStartTime;
+        timeToConnected = timeToConnect / 1000.0;
+        debug().peerConnected(peer, timeToConnect);
+
         log.debug(
-                "{} ICE terminated, connected, selected candidate pair: {} <-> {}",
+                "{} ICE terminated, connected after {} ms, selected candidate pair: {} <-> {}",
                 getLogPrefix(),
+                timeToConnect,
                 component.getSelectedPair().getLocalCandidate().getType().toString(),
                 component.getSelectedPair().getRemoteCandidate().getType().toString());
 
         // We are connected
+        iceSelectedPair = component.getSelectedPair();
+        selectedPath = IcePath.of(iceSelectedPair);
         connected = true;
         rpcService.onConnected(IceAdapter.getId(), peer.getRemoteId(), true);
         setState(CONNECTED);
@@ -382,8 +566,500 @@ public class PeerIceModule {
             connectivityChecker.start();
         }
 
-        listenerThread = new Thread(this::listener);
-        listenerThread.start();
+        listenerThread = startListener();
+        followSelectedPair(mediaStream, component);
+        announceCapabilities(0);
+        startBackupPaths();
+    }
+
+    private Thread startListener() {
+        Component localComponent = component;
+        IceSocketWrapper socket = selectedPath.socket();
+        selectedPairSockets.clear();
+        selectedPairSockets.add(socket);
+        // With the selector data plane FA is not read by a thread per peer, keep the ICE side light-weight as well
+        return IceAdapter.isSelectorDataPlane()
+                ? Thread.ofVirtual().name(getListenerThreadName()).start(() -> listener(localComponent, socket))
+                : Thread.ofPlatform().name(getListenerThreadName()).start(() -> listener(localComponent, socket));
+    }
+
+    /**
+     * ice4j may still select another pair after ICE completed, e.g. when a higher priority pair is nominated late
+     */
+    private void followSelectedPair(IceMediaStream localMediaStream, Component localComponent) {
+        localMediaStream.addPairChangeListener(event -> {
+            if (IceMediaStream.PROPERTY_PAIR_NOMINATED.equals(event.getPropertyName())) {
+                // Not on the ice4j thread, the component updates its selected pair around the event
+                CompletableFuture.runAsync(() -> onSelectedPairChanged(localComponent), IceAdapter.getExecutor());
+            }
+        });
+    }
+
+    private void onSelectedPairChanged(Component localComponent) {
+        boolean changed = LockUtil.executeWithLock(lockPathSwitch, () -> {
+            CandidatePair pair = localComponent.getSelectedPair();
+            if (localComponent != component
+                    || !connected
+                    || selectedPath == null
+                    || pair == null
+                    || pair == iceSelectedPair) {
+                return false;
+            }
+
+            IcePath path = IcePath.of(pair);
+            if (path.socket() == null) {
+                return false;
+            }
+
+            iceSelectedPair = pair;
+            selectedPath = path;
+            log.info(
+                    "{} ICE selected another candidate pair: {} <-> {}",
+                    getLogPrefix(),
+                    pair.getLocalCandidate().getType(),
+                    pair.getRemoteCandidate().getType());
+
+            if (selectedPairSockets.add(path.socket())) {
+                IceSocketWrapper socket = path.socket();
+                Thread.ofVirtual()
+                        .name(getListenerThreadName() + "-selected")
+                        .start(() -> listener(localComponent, socket));
+            }
+            debug().peerStateChanged(this.peer);
+            return true;
+        });
+
+        if (changed) {
+            refreshSelectedRelay(localComponent);
+        }
+    }
+
+    /**
+     * Keeps the allocation of the newly selected relayed candidate alive, the previous one is not needed anymore
+     */
+    private void refreshSelectedRelay(Component localComponent) {
+        LockUtil.executeWithLock(lockLostConnection, () -> {
+            CandidatePair pair = iceSelectedPair;
+            if (localComponent != component || pair == null) {
+                return;
+            }
+
+            LocalCandidate candidate = pair.getLocalCandidate();
+            if (turnRefreshModule != null && turnRefreshModule.getCandidate() == candidate) {
+                return;
+            }
+            if (turnRefreshModule != null) {
+                turnRefreshModule.close();
+                turnRefreshModule = null;
+            }
+            if (candidate.getType() == CandidateType.RELAYED_CANDIDATE) {
+                turnRefreshModule = new PeerTurnRefreshModule(this, (RelayedCandidate) candidate);
+            }
+        });
+    }
+
+    /**
+     * Starts keeping backup paths if both adapters support failover, requires the connection to be established
+     */
+    private void startBackupPaths() {
+        if (IceAdapter.getBackupPairs() <= 0 || !isRemoteCapable(PeerCapabilities.FAILOVER)) {
+            return;
+        }
+
+        LockUtil.executeWithLock(lockBackupPaths, () -> {
+            if (backupPathModule != null || !connected || selectedPath == null) {
+                return;
+            }
+            backupPathModule = new PeerBackupPathModule(this, mediaStream, component, IceAdapter.getBackupPairs());
+        });
+    }
+
+    private void stopBackupPaths() {
+        LockUtil.executeWithLock(lockBackupPaths, () -> {
+            if (backupPathModule != null) {
+                backupPathModule.close();
+                backupPathModule = null;
+            }
+        });
+    }
+
+    /**
+     * Nothing has been received via the selected path for a while, the peer might still be reachable via another one
+     */
+    void onPathSuspected(long silence) {
+        if (backupPathModule != null) {
+            failover("nothing received for %d ms".formatted(silence));
+        }
+    }
+
+    /**
+     * Switches to a backup path that recently answered its keepalives, the selected path becomes a backup
+     *
+     * @return whether a backup path is used now
+     */
+    private boolean failover(String reason) {
+        return LockUtil.executeWithLock(lockPathSwitch, () -> {
+            PeerBackupPathModule localBackupPathModule = backupPathModule;
+            IcePath currentPath = selectedPath;
+            long now = System.currentTimeMillis();
+            if (localBackupPathModule == null
+                    || currentPath == null
+                    || !connected
+                    || now - lastFailoverTime < FAILOVER_COOLDOWN) {
+                return false;
+            }
+
+            Optional<IcePath> backupPath = localBackupPathModule.failover(currentPath);
+            if (backupPath.isEmpty()) {
+                return false;
+            }
+
+            lastFailoverTime = now;
+            selectedPath = backupPath.get();
+            peer.getTrafficCounters().onFailover();
+            log.warn(
+                    "{} Failed over to backup path {} <-> {} ({})",
+                    getLogPrefix(),
+                    selectedPath.pair().getLocalCandidate().getType(),
+                    selectedPath.pair().getRemoteCandidate().getType(),
+                    reason);
+
+            if (peer.isLocalOffer()) {
+                // Start over with fresh statistics for the new path
+                CompletableFuture.runAsync(
+                        () -> {
+                            connectivityChecker.stop();
+                            connectivityChecker.start();
+                        },
+                        IceAdapter.getExecutor());
+            }
+            debug().peerStateChanged(this.peer);
+            return true;
+        });
+    }
+
+    /**
+     * Data has been received via another path than the selected one, the peer failed over, follow it
+     */
+    private void followPeer(IceSocketWrapper socket, DatagramPacket packet) {
+        PeerBackupPathModule localBackupPathModule = backupPathModule;
+        IcePath currentPath = selectedPath;
+        if (localBackupPathModule == null || currentPath == null || peer.isLocalOffer()) {
+            return;
+        }
+        if (currentPath.socket() == socket
+                && currentPath.remoteAddress().getPort() == packet.getPort()
+                && currentPath.remoteAddress().getAddress().equals(packet.getAddress())) {
+            return;
+        }
+
+        LockUtil.executeWithLock(lockPathSwitch, () -> {
+            if (selectedPath != currentPath) {
+                return;
+            }
+            localBackupPathModule
+                    .follow(currentPath, socket, packet.getAddress(), packet.getPort())
+                    .ifPresent(path -> {
+                        selectedPath = path;
+                        peer.getTrafficCounters().onFailover();
+                        log.info(
+                                "{} Peer failed over, following to {} <-> {}",
+                                getLogPrefix(),
+                                path.pair().getLocalCandidate().getType(),
+                                path.pair().getRemoteCandidate().getType());
+                        debug().peerStateChanged(this.peer);
+                    });
+        });
+    }
+
+    /**
+     * The offering peer measured the echo loss of the connection, toggles packet duplication with a hysteresis
+     */
+    void onPacketLossMeasured(float packetLoss) {
+        float threshold = IceAdapter.getPacketDuplicationLoss();
+        if (!packetDuplication && packetLoss >= threshold) {
+            setPacketDuplication(true, "%.0f%% echo loss".formatted(packetLoss * 100));
+        } else if (packetDuplication && packetLoss < threshold / 2) {
+            setPacketDuplication(false, "%.0f%% echo loss".formatted(packetLoss * 100));
+        }
+    }
+
+    /**
+     * Duplication is only used if both adapters support it, the answering peer mirrors the offering peer
+     */
+    private void setPacketDuplication(boolean enabled, String reason) {
+        if (enabled && (!IceAdapter.isPacketDuplication() || !isRemoteCapable(PeerCapabilities.PACKET_DUPLICATION))) {
+            return;
+        }
+
+        packetDuplication = enabled;
+        log.info("{} {} packet duplication ({})", getLogPrefix(), enabled ? "Enabling" : "Disabling", reason);
+    }
+
+    /**
+     * The connection works, but its quality degraded (e.g. packet loss)
+     * Negotiates a new agent in parallel while the current one keeps forwarding, if both adapters support it
+     */
+    void onConnectionDegraded(String reason) {
+        if (failover(reason)) {
+            return;
+        }
+
+        if (!peer.isLocalOffer() || !IceAdapter.isIceRestart() || !isRemoteCapable(PeerCapabilities.ICE_RESTART)) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        if (now - lastRestartTime < RESTART_COOLDOWN || restartAgent != null) {
+            return;
+        }
+        lastRestartTime = now;
+
+        log.info("{} Connection degraded ({}), restarting ICE", getLogPrefix(), reason);
+        CompletableFuture.runAsync(this::restartIce, IceAdapter.getExecutor());
+    }
+
+    /**
+     * Offers the candidates of a new agent for an ICE restart, the current connection is kept until it succeeded
+     */
+    private void restartIce() {
+        LockUtil.executeWithLock(lockInit, () -> {
+            if (peer.isClosing() || iceState != CONNECTED || restartAgent != null) {
+                return;
+            }
+
+            Optional<HarvestedAgent> harvestedAgent = obtainHarvestedAgent();
+            if (harvestedAgent.isEmpty()) {
+                log.warn("{} Could not gather candidates for ICE restart, keeping current connection", getLogPrefix());
+                return;
+            }
+
+            HarvestedAgent localRestartAgent = harvestedAgent.get();
+            localRestartAgent.agent().setControlling(true);
+            if (!setRestartAgent(localRestartAgent)) {
+                return;
+            }
+
+            rpcService.onIceMsg(
+                    packLocalCandidates(localRestartAgent.agent(), localRestartAgent.component()).asRestart());
+
+            // Give up on the restart when the answer got lost
+            CompletableFuture.runAsync(
+                    () -> {
+                        if (restartAgent == localRestartAgent
+                                && localRestartAgent.agent().getState() == IceProcessingState.WAITING) {
+                            log.warn("{} No answer to ICE restart, keeping current connection", getLogPrefix());
+                            abandonRestart(localRestartAgent);
+                        }
+                    },
+                    CompletableFuture.delayedExecutor(6000, TimeUnit.MILLISECONDS, IceAdapter.getExecutor()));
+        });
+    }
+
+    /**
+     * The offering peer restarts ICE, answer with the candidates of a new agent and check it
+     */
+    private void answerRestart(CandidatesMessage remoteCandidatesMessage) {
+        LockUtil.executeWithLock(lockInit, () -> {
+            log.info("{} Received ICE restart offer", getLogPrefix());
+
+            HarvestedAgent previousRestartAgent = restartAgent;
+            if (previousRestartAgent != null) {
+                // Superseded by the new offer
+                abandonRestart(previousRestartAgent);
+            }
+
+            Optional<HarvestedAgent> harvestedAgent = obtainHarvestedAgent();
+            if (harvestedAgent.isEmpty()) {
+                log.warn("{} Could not gather candidates for ICE restart, keeping current connection", getLogPrefix());
+                return;
+            }
+
+            HarvestedAgent localRestartAgent = harvestedAgent.get();
+            localRestartAgent.agent().setControlling(false);
+            if (!setRestartAgent(localRestartAgent)) {
+                return;
+            }
+
+            rpcService.onIceMsg(packLocalCandidates(localRestartAgent.agent(), localRestartAgent.component()));
+            runRestartChecks(localRestartAgent, remoteCandidatesMessage);
+        });
+    }
+
+    /**
+     * @return whether the agent has been set, false if a restart is already in progress (the agent is freed)
+     */
+    private boolean setRestartAgent(HarvestedAgent localRestartAgent) {
+        boolean set = LockUtil.executeWithLock(lockRestart, () -> {
+            if (restartAgent != null) {
+                return false;
+            }
+            restartAgent = localRestartAgent;
+            return true;
+        });
+
+        if (!set) {
+            localRestartAgent.agent().free();
+        }
+        return set;
+    }
+
+    private void runRestartChecks(HarvestedAgent localRestartAgent, CandidatesMessage remoteCandidatesMessage) {
+        long previousConnectivityAttempts = getConnectivityAttempsInThePast(FORCE_SRFLX_RELAY_INTERVAL);
+        CandidateUtil.unpackCandidates(
+                remoteCandidatesMessage,
+                localRestartAgent.agent(),
+                localRestartAgent.component(),
+                localRestartAgent.mediaStream(),
+                previousConnectivityAttempts < FORCE_SRFLX_COUNT && ALLOW_HOST,
+                previousConnectivityAttempts < FORCE_RELAY_COUNT && ALLOW_REFLEXIVE,
+                ALLOW_RELAY);
+
+        log.debug("{} Starting ICE restart checks for peer {}", getLogPrefix(), peer.getRemoteId());
+        long iceStartTime = System.currentTimeMillis();
+        runConnectivityChecks(localRestartAgent.agent())
+                .whenCompleteAsync(
+                        (state, throwable) ->
+                                onRestartProcessingOver(localRestartAgent, state, throwable, iceStartTime),
+                        IceAdapter.getExecutor());
+    }
+
+    /**
+     * The agent of the ICE restart completed, failed or timed out, switches to it on success
+     * On failure the current connection is kept, the connectivity checker still detects if it is dead
+     */
+    private void onRestartProcessingOver(
+            HarvestedAgent localRestartAgent, IceProcessingState state, Throwable throwable, long iceStartTime) {
+        if (restartAgent != localRestartAgent) {
+            log.debug("{} ICE restart has been abandoned while checking, ignoring its result", getLogPrefix());
+            return;
+        }
+
+        if (throwable != null || state != IceProcessingState.COMPLETED) {
+            log.warn("{} ICE restart did not complete, keeping current connection, state: {}", getLogPrefix(), state);
+            abandonRestart(localRestartAgent);
+            return;
+        }
+
+        LockUtil.executeWithLock(lockLostConnection, () -> {
+            if (iceState != CONNECTED || !clearRestartAgent(localRestartAgent)) {
+                abandonRestart(localRestartAgent);
+                return;
+            }
+
+            Agent previousAgent = agent;
+            agent = localRestartAgent.agent();
+            mediaStream = localRestartAgent.mediaStream();
+            component = localRestartAgent.component();
+
+            // From here on all packets are sent via the new pair
+            iceSelectedPair = component.getSelectedPair();
+            selectedPath = IcePath.of(iceSelectedPair);
+            // Backups of the previous agent are gone with it
+            stopBackupPaths();
+
+            long timeToConnect = System.currentTimeMillis() - iceStartTime;
+            timeToConnected = timeToConnect / 1000.0;
+
+            log.info(
+                    "{} ICE restarted after {} ms, selected candidate pair: {} <-> {}",
+                    getLogPrefix(),
+                    timeToConnect,
+                    component.getSelectedPair().getLocalCandidate().getType().toString(),
+                    component.getSelectedPair().getRemoteCandidate().getType().toString());
+
+            if (turnRefreshModule != null) {
+                turnRefreshModule.close();
+                turnRefreshModule = null;
+            }
+            if (component.getSelectedPair().getLocalCandidate().getType() == CandidateType.RELAYED_CANDIDATE) {
+                turnRefreshModule = new PeerTurnRefreshModule(
+                        this, (RelayedCandidate) component.getSelectedPair().getLocalCandidate());
+            }
+
+            // The previous listener stops once its agent is freed
+            listenerThread = startListener();
+            followSelectedPair(mediaStream, component);
+
+            if (peer.isLocalOffer()) {
+                // Start over with fresh statistics for the new path
+                connectivityChecker.stop();
+                connectivityChecker.start();
+            }
+
+            startBackupPaths();
+            debug().peerStateChanged(this.peer);
+
+            // The other peer might not have switched yet, keep receiving via the previous agent for a while
+            CompletableFuture.runAsync(
+                    previousAgent::free,
+                    CompletableFuture.delayedExecutor(RESTART_GRACE, TimeUnit.MILLISECONDS, IceAdapter.getExecutor()));
+        });
+    }
+
+    private boolean clearRestartAgent(HarvestedAgent localRestartAgent) {
+        return LockUtil.executeWithLock(lockRestart, () -> {
+            if (restartAgent != localRestartAgent) {
+                return false;
+            }
+            restartAgent = null;
+            return true;
+        });
+    }
+
+    /**
+     * Stops an ICE restart in progress and frees its agent
+     */
+    private void abandonRestart(HarvestedAgent localRestartAgent) {
+        clearRestartAgent(localRestartAgent);
+        localRestartAgent.agent().free();
+    }
+
+    private boolean isRemoteCapable(int capability) {
+        int capabilities = remoteCapabilities;
+        return capabilities >= 0 && (capabilities & capability) != 0;
+    }
+
+    /**
+     * Sends hellos announcing the local capabilities until the peer answered or too many attempts have been made
+     */
+    private void announceCapabilities(int attempt) {
+        int localCapabilities = PeerCapabilities.getLocalCapabilities();
+        if (localCapabilities == 0
+                || !connected
+                || remoteCapabilities >= 0
+                || attempt >= CAPABILITY_ANNOUNCEMENTS
+                || peer.isClosing()) {
+            return;
+        }
+
+        byte[] hello = PeerCapabilities.hello(localCapabilities, true);
+        sendViaIce(hello, 0, hello.length);
+
+        CompletableFuture.runAsync(
+                () -> announceCapabilities(attempt + 1),
+                CompletableFuture.delayedExecutor(1000, TimeUnit.MILLISECONDS, IceAdapter.getExecutor()));
+    }
+
+    private void onHelloReceived(byte[] data, int length) {
+        if (length < PeerCapabilities.HELLO_LENGTH) {
+            log.warn("{} Received hello of wrong length, length: {}", getLogPrefix(), length);
+            return;
+        }
+
+        int capabilities = PeerCapabilities.readCapabilities(data);
+        if (capabilities != remoteCapabilities) {
+            log.info("{} Peer announced capabilities: {}", getLogPrefix(), PeerCapabilities.toString(capabilities));
+        }
+        remoteCapabilities = capabilities;
+        remoteFramingVersion = PeerCapabilities.readFramingVersion(data, length);
+        startBackupPaths();
+
+        int localCapabilities = PeerCapabilities.getLocalCapabilities();
+        if (PeerCapabilities.isReplyRequested(data) && localCapabilities != 0) {
+            byte[] hello = PeerCapabilities.hello(localCapabilities, false);
+            sendViaIce(hello, 0, hello.length);
+        }
     }
 
     /**
@@ -395,6 +1071,7 @@ public class PeerIceModule {
         LockUtil.executeWithLock(lockLostConnection, () -> {
             if (iceState == DISCONNECTED) {
                 log.warn("{} Lost connection, albeit already in ice state disconnected", getLogPrefix());
+                sendFailureHandled.set(false);
                 return; // TODO: will this kill the life cycle?
             }
 
@@ -411,12 +1088,27 @@ public class PeerIceModule {
             }
 
             connectivityChecker.stop();
+            stopBackupPaths();
+            packetDuplication = false;
+            duplicateFilter.reset();
+            parityDecoder.reset();
+
+            HarvestedAgent localRestartAgent = restartAgent;
+            if (localRestartAgent != null) {
+                abandonRestart(localRestartAgent);
+            }
+
+            selectedPath = null;
+            iceSelectedPair = null;
+            timeToConnected = -1.0;
 
             if (connected) {
                 connected = false;
                 log.warn("{} ICE connection has been lost for peer", getLogPrefix());
                 rpcService.onConnected(IceAdapter.getId(), peer.getRemoteId(), false);
             }
+            // Nothing is sent anymore until connected again
+            sendFailureHandled.set(false);
 
             setState(DISCONNECTED);
 
@@ -459,15 +1151,104 @@ public class PeerIceModule {
 
     /**
      * Data received from FA, prepends prefix and sends it via ICE to the other peer
+     * The payload is expected at offset FA_DATA_OFFSET, the bytes before are headroom reserved for the prefix.
+     * Must only be called by the thread reading from the FA socket as the outgoing packet is reused.
      *
-     * @param faData
-     * @param length
+     * @param data
+     * @param length the length of the FA payload, excluding the headroom
+     */
+    void onFaDataReceived(byte[] data, int length) {
+        IcePath path = selectedPath;
+        if (!connected || path == null) {
+            peer.getTrafficCounters().onDroppedToIce();
+            return;
+        }
+
+        if (packetDuplication) {
+            sendDuplicated(path, data, length);
+            return;
+        }
+
+        if (IceAdapter.getFecGroupSize() > 0 && isRemoteCapable(PeerCapabilities.FORWARD_ERROR_CORRECTION)) {
+            sendWithParity(path, data, length);
+            return;
+        }
+
+        if (packetCoalescer != null
+                && isRemoteCapable(PeerCapabilities.COALESCING)
+                && packetCoalescer.add(data, FA_DATA_OFFSET, length, isCompactFraming())) {
+            return;
+        }
+
+        data[FA_DATA_OFFSET - 1] = 'd';
+        faForwardPacket.setData(data, FA_DATA_OFFSET - 1, length + 1);
+        if (sendViaIce(path, faForwardPacket)) {
+            peer.getTrafficCounters().onSentToIce(length + 1);
+        }
+    }
+
+    /**
+     * Sends a batch of the packet coalescer, called while it holds the batch
+     *
+     * @param packets the number of packets from FA in the batch
+     * @param framingBytesSaved bytes saved by compact framing compared to the regular format
+     */
+    void sendCoalesced(byte[] data, int offset, int length, int packets, int framingBytesSaved) {
+        IcePath path = selectedPath;
+        if (!connected || path == null) {
+            for (int i = 0; i < packets; i++) {
+                peer.getTrafficCounters().onDroppedToIce();
+            }
+            return;
+        }
+
+        if (sendViaIce(path, new DatagramPacket(data, offset, length))) {
+            peer.getTrafficCounters().onSentToIce(length);
+            peer.getTrafficCounters().onCoalesced(packets);
+            peer.getTrafficCounters().onFramingSaved(framingBytesSaved);
+        }
+    }
+
+    /**
+     * Sends the data with a sequence header, the peer drops whichever copy arrives second
+     * The copy is sent via a backup path that recently worked if there is one, otherwise via the same path after a
+     * short delay, so both are not lost in the same burst.
      */
-    void onFaDataReceived(byte[] faData, int length) {
-        byte[] data = new byte[length + 1];
-        data[0] = 'd';
-        System.arraycopy(faData, 0, data, 1, length);
-        sendViaIce(data, 0, data.length);
+    private void sendDuplicated(IcePath path, byte[] data, int length) {
+        int start = writeSequenceHeader(data, dataSequence++);
+        int packetLength = FA_DATA_OFFSET - start + length;
+
+        faForwardPacket.setData(data, start, packetLength);
+        if (!sendViaIce(path, faForwardPacket)) {
+            return;
+        }
+        peer.getTrafficCounters().onSentToIce(packetLength);
+
+        PeerBackupPathModule localBackupPathModule = backupPathModule;
+        IcePath backupPath = localBackupPathModule != null ? localBackupPathModule.getWarmBackupPath() : null;
+        if (backupPath != null && backupPath != path) {
+            try {
+                faForwardPacket.setSocketAddress(backupPath.remoteAddress());
+                backupPath.socket().send(faForwardPacket);
+                peer.getTrafficCounters().onDuplicateSent();
+            } catch (IOException e) {
+                // The keepalives of the backup path will notice as well
+                log.debug("{} Failed to send duplicate via backup path", getLogPrefix(), e);
+            }
+            return;
+        }
+
+        byte[] duplicate = Arrays.copyOfRange(data, start, start + packetLength);
+        CompletableFuture.runAsync(
+                () -> {
+                    IcePath currentPath = selectedPath;
+                    if (connected
+                            && currentPath != null
+                            && sendViaIce(currentPath, new DatagramPacket(duplicate, duplicate.length))) {
+                        peer.getTrafficCounters().onDuplicateSent();
+                    }
+                },
+                CompletableFuture.delayedExecutor(DUPLICATE_SPACING, TimeUnit.MILLISECONDS, IceAdapter.getExecutor()));
     }
 
     /**
@@ -478,78 +1259,146 @@ public class PeerIceModule {
      * @param length
      */
     void sendViaIce(byte[] data, int offset, int length) {
-        if (connected && component != null) {
-            try {
-                component
-                        .getSelectedPair()
-                        .getIceSocketWrapper()
-                        .send(new DatagramPacket(
-                                data,
-                                offset,
-                                length,
-                                component
-                                        .getSelectedPair()
-                                        .getRemoteCandidate()
-                                        .getTransportAddress()
-                                        .getAddress(),
-                                component
-                                        .getSelectedPair()
-                                        .getRemoteCandidate()
-                                        .getTransportAddress()
-                                        .getPort()));
-            } catch (IOException e) {
-                log.warn("{} Failed to send data via ICE", getLogPrefix(), e);
-                onConnectionLost();
-            } catch (NullPointerException e) {
-                log.error("Component is null", e);
+        IcePath path = selectedPath;
+        if (connected && path != null) {
+            sendViaIce(path, new DatagramPacket(data, offset, length));
+        }
+    }
+
+    /**
+     * @return whether the packet was sent, on failure the connection is considered lost
+     */
+    private boolean sendViaIce(IcePath path, DatagramPacket packet) {
+        try {
+            packet.setSocketAddress(path.remoteAddress());
+            path.socket().send(packet);
+            return true;
+        } catch (IOException e) {
+            peer.getTrafficCounters().onSendFailureToIce();
+            log.warn("{} Failed to send data via ICE", getLogPrefix(), e);
+            // Not on the sending thread, with the selector data plane it forwards FA traffic to all peers
+            if (sendFailureHandled.compareAndSet(false, true)) {
+                CompletableFuture.runAsync(this::onConnectionLost, IceAdapter.getExecutor());
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Sends the data with a sequence header, after every group of packets a parity packet follows
+     */
+    private void sendWithParity(IcePath path, byte[] data, int length) {
+        int sequence = dataSequence++;
+        int start = writeSequenceHeader(data, sequence);
+        int packetLength = FA_DATA_OFFSET - start + length;
+
+        faForwardPacket.setData(data, start, packetLength);
+        if (!sendViaIce(path, faForwardPacket)) {
+            return;
+        }
+        peer.getTrafficCounters().onSentToIce(packetLength);
+
+        boolean compactFraming = isCompactFraming();
+        int parityLength = parityEncoder.add(sequence, data, FA_DATA_OFFSET, length, compactFraming);
+        if (parityLength > 0) {
+            faForwardPacket.setData(parityEncoder.getParity(), parityEncoder.getParityOffset(), parityLength);
+            if (sendViaIce(path, faForwardPacket)) {
+                peer.getTrafficCounters().onParitySent();
+                if (compactFraming) {
+                    peer.getTrafficCounters().onFramingSaved(ParityEncoder.PARITY_HEADER_LENGTH
+                            - (ParityEncoder.PAYLOAD_OFFSET - parityEncoder.getParityOffset()));
+                }
             }
         }
     }
 
     /**
-     * Listens for data incoming via ice socket
+     * Writes the sequence header right in front of the payload at FA_DATA_OFFSET
+     *
+     * @return the offset the packet starts at
+     */
+    private int writeSequenceHeader(byte[] data, int sequence) {
+        if (isCompactFraming()) {
+            long unsignedSequence = Integer.toUnsignedLong(sequence);
+            int start = FA_DATA_OFFSET - 1 - CompactFraming.varintLength(unsignedSequence);
+            data[start] = CompactFraming.SEQUENCED_DATA;
+            CompactFraming.writeVarint(data, start + 1, unsignedSequence);
+            peer.getTrafficCounters().onFramingSaved(SEQUENCE_HEADER_LENGTH - (FA_DATA_OFFSET - start));
+            return start;
+        }
+
+        int start = FA_DATA_OFFSET - SEQUENCE_HEADER_LENGTH;
+        data[start] = SEQUENCED_DATA_PREFIX;
+        PeerConnectivityCheckerModule.writeInt(data, start + 1, sequence);
+        return start;
+    }
+
+    /**
+     * @return whether packets are sent with compact framing, requires both adapters to support the same version
+     */
+    boolean isCompactFraming() {
+        return IceAdapter.isCompactFraming() && remoteFramingVersion == CompactFraming.VERSION;
+    }
+
+    /**
+     * Listens for data incoming via an ice socket, the one of the selected pair or of a backup pair
      */
-    public void listener() {
+    void listener(Component localComponent, IceSocketWrapper socket) {
         log.debug("{} Now forwarding data from ICE to FA for peer", getLogPrefix());
-        Component localComponent = component;
 
         byte[] data = new byte
                 [65536]; // 64KiB = UDP MTU, in practice due to ethernet frames being <= 1500 B, this is often not used
         while (!Thread.currentThread().isInterrupted() && IceAdapter.getGameSession() == peer.getGameSession()) {
             try {
                 DatagramPacket packet = new DatagramPacket(data, data.length);
-                localComponent
-                        .getSelectedPair()
-                        .getIceSocketWrapper()
-                        .getUDPSocket()
-                        .receive(packet);
+                socket.getUDPSocket().receive(packet);
 
                 if (packet.getLength() == 0) {
                     continue;
                 }
 
-                if (data[0] == 'd') {
+                if (data[0] == 'd' || data[0] == PacketCoalescer.COALESCED_PREFIX) {
                     // Received data
-                    peer.onIceDataReceived(data, 1, packet.getLength() - 1);
+                    onDataReceived(socket, packet);
+                } else if (data[0] == SEQUENCED_DATA_PREFIX) {
+                    // Not followed, the peer may send a duplicate via a backup path
+                    if (packet.getLength() < SEQUENCE_HEADER_LENGTH) {
+                        onInvalidPacketReceived(packet);
+                    } else {
+                        onSequencedDataReceived(
+                                data,
+                                SEQUENCE_HEADER_LENGTH,
+                                packet.getLength(),
+                                PeerConnectivityCheckerModule.readInt(data, 1));
+                    }
+                } else if (data[0] == ParityEncoder.PARITY_PREFIX) {
+                    onParityReceived(parityDecoder.onParityReceived(data, packet.getLength()));
                 } else if (data[0] == 'e') {
                     // Received echo req/res
-                    if (peer.isLocalOffer()) {
-                        connectivityChecker.echoReceived(data, 0, packet.getLength());
-                    } else {
-                        sendViaIce(data, 0, packet.getLength()); // Turn around, send echo back
+                    onEchoReceived(socket, packet);
+                } else if (CompactFraming.isCompact(data[0])) {
+                    onCompactPacketReceived(socket, packet);
+                } else if (data[0] == PeerCapabilities.HELLO_PREFIX) {
+                    onHelloReceived(data, packet.getLength());
+                } else if (data[0] == PeerBackupPathModule.KEEPALIVE_PREFIX) {
+                    PeerBackupPathModule.answerKeepalive(socket, packet);
+                } else if (data[0] == PeerBackupPathModule.KEEPALIVE_REPLY_PREFIX) {
+                    PeerBackupPathModule localBackupPathModule = backupPathModule;
+                    if (localBackupPathModule != null) {
+                        localBackupPathModule.onKeepaliveReplyReceived(socket, packet);
                     }
                 } else {
-                    log.warn(
-                            "{} Received invalid packet, first byte: 0x{}, length: {}",
-                            getLogPrefix(),
-                            data[0],
-                            packet.getLength());
+                    onInvalidPacketReceived(packet);
                 }
 
-            } catch (IOException e) { // TODO: nullpointer from localComponent.xxxx????
-                log.warn("{} Error while reading from ICE adapter", getLogPrefix(), e);
-                if (component == localComponent) {
+            } catch (IOException e) {
+                IcePath path = selectedPath;
+                if (component == localComponent && path != null && path.socket() == socket) {
+                    log.warn("{} Error while reading from ICE adapter", getLogPrefix(), e);
                     onConnectionLost();
+                } else {
+                    // Socket of a backup pair or of a previous agent
+                    log.debug("{} Stopped reading from unused ICE socket", getLogPrefix(), e);
                 }
                 return;
             }
@@ -558,6 +1407,122 @@ public class PeerIceModule {
         log.debug("{} No longer listening for messages from ICE", getLogPrefix());
     }
 
+    private void onCompactPacketReceived(IceSocketWrapper socket, DatagramPacket packet) {
+        byte[] data = packet.getData();
+        int length = packet.getLength();
+        switch (data[0]) {
+            case CompactFraming.SEQUENCED_DATA -> {
+                long sequence = CompactFraming.readVarint(data, 1, length);
+                if (sequence < 0) {
+                    onInvalidPacketReceived(packet);
+                    return;
+                }
+                onSequencedDataReceived(data, 1 + CompactFraming.varintLength(sequence), length, (int) sequence);
+            }
+            case CompactFraming.COALESCED -> onDataReceived(socket, packet);
+            case CompactFraming.PARITY -> onParityReceived(parityDecoder.onCompactParityReceived(data, length));
+            case CompactFraming.ECHO -> onEchoReceived(socket, packet);
+            default -> onInvalidPacketReceived(packet);
+        }
+    }
+
+    /**
+     * Plain or coalesced data
+     */
+    private void onDataReceived(IceSocketWrapper socket, DatagramPacket packet) {
+        byte[] data = packet.getData();
+        followPeer(socket, packet);
+        if (packetDuplication && !peer.isLocalOffer()) {
+            setPacketDuplication(false, "peer stopped duplicating");
+        }
+
+        if (data[0] == 'd') {
+            peer.onIceDataReceived(data, 1, packet.getLength() - 1);
+        } else if (!PacketCoalescer.split(data, packet.getLength(), data[0] == CompactFraming.COALESCED, peer)) {
+            peer.getTrafficCounters().onDroppedFromIce();
+            log.warn("{} Received malformed coalesced packet, length: {}", getLogPrefix(), packet.getLength());
+        }
+
+        if (peer.isLocalOffer()) {
+            connectivityChecker.heartbeat();
+        }
+    }
+
+    private void onEchoReceived(IceSocketWrapper socket, DatagramPacket packet) {
+        if (peer.isLocalOffer()) {
+            connectivityChecker.echoReceived(packet.getData(), 0, packet.getLength());
+        } else {
+            followPeer(socket, packet);
+            sendViaIce(packet.getData(), 0, packet.getLength()); // Turn around, send echo back
+        }
+    }
+
+    private void onInvalidPacketReceived(DatagramPacket packet) {
+        peer.getTrafficCounters().onDroppedFromIce();
+        log.warn(
+                "{} Received invalid packet, first byte: 0x{}, length: {}",
+                getLogPrefix(),
+                packet.getData()[0],
+                packet.getLength());
+    }
+
+    /**
+     * @param offset the offset of the payload, after the sequence header
+     * @param length the length of the packet, including the sequence header
+     */
+    private void onSequencedDataReceived(byte[] data, int offset, int length, int sequence) {
+        if (peer.isLocalOffer()) {
+            connectivityChecker.heartbeat();
+        }
+
+        if (!duplicateFilter.accept(sequence)) {
+            if (duplicateFilter.isStale(sequence)) {
+                // Arrived a full duplicate window late, neither a duplicate nor of use to the game anymore
+                log.debug("{} Dropping stale packet {}", getLogPrefix(), sequence);
+                return;
+            }
+            if (duplicateFilter.isRecovered(sequence)) {
+                // Late original of a packet already rebuilt from parity, the peer does not duplicate
+                peer.getTrafficCounters().onLateOriginalDropped();
+                return;
+            }
+
+            peer.getTrafficCounters().onDuplicateDropped();
+            if (!peer.isLocalOffer()) {
+                // The answering peer mirrors duplication of the offering peer
+                lastDuplicateReceived = System.currentTimeMillis();
+                if (!packetDuplication) {
+                    setPacketDuplication(true, "peer duplicates");
+                }
+            }
+            return;
+        }
+
+        if (packetDuplication
+                && !peer.isLocalOffer()
+                && System.currentTimeMillis() - lastDuplicateReceived > DUPLICATION_MIRROR_TIMEOUT) {
+            setPacketDuplication(false, "peer stopped duplicating");
+        }
+
+        if (IceAdapter.getFecGroupSize() > 0) {
+            parityDecoder.onDataReceived(sequence, data, offset, length - offset);
+        }
+        peer.onIceDataReceived(data, offset, length - offset);
+    }
+
+    private void onParityReceived(Optional<ParityDecoder.RecoveredPacket> recovered) {
+        if (peer.isLocalOffer()) {
+            connectivityChecker.heartbeat();
+        }
+
+        recovered
+                .filter(recoveredPacket -> duplicateFilter.acceptRecovered(recoveredPacket.sequence()))
+                .ifPresent(recoveredPacket -> {
+                    peer.getTrafficCounters().onPacketRecovered();
+                    peer.onIceDataReceived(recoveredPacket.payload(), 0, recoveredPacket.payload().length);
+                });
+    }
+
     void close() {
         if (listenerThread != null) {
             listenerThread.interrupt();
@@ -566,9 +1531,14 @@ public class PeerIceModule {
         if (turnRefreshModule != null) {
             turnRefreshModule.close();
         }
+        stopBackupPaths();
         if (agent != null) {
             agent.free();
         }
+        HarvestedAgent localRestartAgent = restartAgent;
+        if (localRestartAgent != null) {
+            abandonRestart(localRestartAgent);
+        }
         connectivityChecker.stop();
     }
 
@@ -580,6 +1550,10 @@ public class PeerIceModule {
                         .count();
     }
 
+    String getListenerThreadName() {
+        return "iceListener-" + peer.getRemoteId();
+    }
+
     public String getLogPrefix() {
         return "ICE %s:".formatted(peer.getPeerIdentifier());
     }
@@ -0,0 +1,176 @@
+package com.faforever.iceadapter.ice;
+
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+import com.fasterxml.jackson.databind.annotation.JsonNaming;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Packet and byte counters of a peer connection, cheap to update from the forwarding threads
+ * "To ICE" is data from the local game sent to the peer, "from ICE" is data from the peer forwarded to the local game
+ */
+public class PeerTrafficCounters {
+
+    // Largest UDP payload fitting into a single 1500 B ethernet frame, larger packets are likely to be fragmented
+    static final int MAX_UNFRAGMENTED_PAYLOAD = 1472;
+
+    private final LongAdder packetsToIce = new LongAdder();
+    private final LongAdder bytesToIce = new LongAdder();
+    private final LongAdder packetsFromIce = new LongAdder();
+    private final LongAdder bytesFromIce = new LongAdder();
+    private final LongAdder droppedToIce = new LongAdder();
+    private final LongAdder droppedFromIce = new LongAdder();
+    private final LongAdder oversizedPackets = new LongAdder();
+    private final LongAdder sendFailuresToIce = new LongAdder();
+    private final LongAdder sendFailuresToFa = new LongAdder();
+    private final LongAdder failovers = new LongAdder();
+    private final LongAdder duplicatesSent = new LongAdder();
+    private final LongAdder duplicatesDropped = new LongAdder();
+    private final LongAdder paritySent = new LongAdder();
+    private final LongAdder recoveredPackets = new LongAdder();
+    private final LongAdder lateOriginalsDropped = new LongAdder();
+    private final LongAdder datagramsSaved = new LongAdder();
+    private final LongAdder framingBytesSaved = new LongAdder();
+    private final long createdAt = System.currentTimeMillis();
+
+    @JsonNaming(PropertyNamingStrategies.SnakeCaseStrategy.class)
+    public record Snapshot(
+            long packetsToIce,
+            long bytesToIce,
+            long packetsFromIce,
+            long bytesFromIce,
+            long droppedToIce,
+            long droppedFromIce,
+            long oversizedPackets,
+            long sendFailuresToIce,
+            long sendFailuresToFa,
+            long failovers,
+            long duplicatesSent,
+            long duplicatesDropped,
+            long paritySent,
+            long recoveredPackets,
+            long lateOriginalsDropped,
+            long datagramsSaved,
+            float datagramsSavedPerSecond,
+            long framingBytesSaved) {}
+
+    /**
+     * @param length the size of the packet sent via ICE, including the prefix
+     */
+    void onSentToIce(int length) {
+        packetsToIce.increment();
+        bytesToIce.add(length);
+        if (length > MAX_UNFRAGMENTED_PAYLOAD) {
+            oversizedPackets.increment();
+        }
+    }
+
+    /**
+     * @param length the size of the game data forwarded to FA, excluding the prefix
+     */
+    void onForwardedToFa(int length) {
+        packetsFromIce.increment();
+        bytesFromIce.add(length);
+        if (length + 1 > MAX_UNFRAGMENTED_PAYLOAD) {
+            oversizedPackets.increment();
+        }
+    }
+
+    /**
+     * Data from FA that could not be sent as there is no connection (yet)
+     */
+    void onDroppedToIce() {
+        droppedToIce.increment();
+    }
+
+    /**
+     * Packets received via ICE that were not forwarded (invalid, or the peer is closing)
+     */
+    void onDroppedFromIce() {
+        droppedFromIce.increment();
+    }
+
+    void onSendFailureToIce() {
+        sendFailuresToIce.increment();
+    }
+
+    void onSendFailureToFa() {
+        sendFailuresToFa.increment();
+    }
+
+    /**
+     * The connection switched to a backup candidate pair, either by itself or following the peer
+     */
+    void onFailover() {
+        failovers.increment();
+    }
+
+    /**
+     * A redundant copy of a packet from FA has been sent, not included in the packets sent to ICE
+     */
+    void onDuplicateSent() {
+        duplicatesSent.increment();
+    }
+
+    /**
+     * A packet from ICE has been dropped as it has already been received
+     */
+    void onDuplicateDropped() {
+        duplicatesDropped.increment();
+    }
+
+    void onParitySent() {
+        paritySent.increment();
+    }
+
+    /**
+     * A lost packet has been rebuilt from a parity packet and forwarded to FA
+     */
+    void onPacketRecovered() {
+        recoveredPackets.increment();
+    }
+
+    /**
+     * A packet from ICE has been dropped as it has already been rebuilt from parity, not counted as duplicate
+     */
+    void onLateOriginalDropped() {
+        lateOriginalsDropped.increment();
+    }
+
+    /**
+     * A datagram carrying several packets from FA has been sent
+     */
+    void onCoalesced(int packets) {
+        datagramsSaved.add(packets - 1);
+    }
+
+    /**
+     * @param bytes saved by compact framing compared to the regular packet format
+     */
+    void onFramingSaved(int bytes) {
+        framingBytesSaved.add(bytes);
+    }
+
+    public Snapshot snapshot() {
+        long saved = datagramsSaved.sum();
+        float seconds = Math.max(1, System.currentTimeMillis() - createdAt) / 1000.0f;
+        return new Snapshot(
+                packetsToIce.sum(),
+                bytesToIce.sum(),
+                packetsFromIce.sum(),
+                bytesFromIce.sum(),
+                droppedToIce.sum(),
+                droppedFromIce.sum(),
+                oversizedPackets.sum(),
+                sendFailuresToIce.sum(),
+                sendFailuresToFa.sum(),
+                failovers.sum(),
+                duplicatesSent.sum(),
+                duplicatesDropped.sum(),
+                paritySent.sum(),
+                recoveredPackets.sum(),
+                lateOriginalsDropped.sum(),
+                saved,
+                saved / seconds,
+                framingBytesSaved.sum());
+    }
+}
@@ -2,29 +2,22 @@ package com.faforever.iceadapter.rpc;
 
 import com.faforever.iceadapter.FafRpcCallbacks;
 import com.faforever.iceadapter.IceAdapter;
-import com.faforever.iceadapter.IceStatus;
+import com.faforever.iceadapter.debug.Debug;
+import com.faforever.iceadapter.debug.EventJournal;
 import com.faforever.iceadapter.gpgnet.GPGNetServer;
 import com.faforever.iceadapter.gpgnet.LobbyInitMode;
 import com.faforever.iceadapter.ice.CandidatesMessage;
 import com.faforever.iceadapter.ice.GameSession;
 import com.faforever.iceadapter.ice.Peer;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.faforever.iceadapter.ice.PeerTrafficCounters;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 import lombok.RequiredArgsConstructor;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
-import org.ice4j.TransportAddress;
-import org.ice4j.ice.Candidate;
-import org.ice4j.ice.CandidatePair;
-import org.ice4j.ice.CandidateType;
-import org.ice4j.ice.Component;
 
 /**
  * Handles calls from JsonRPC (the client)
@@ -33,34 +26,40 @@ import org.ice4j.ice.Component;
 @RequiredArgsConstructor
 public class RPCHandler {
 
-    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
-    private final Lock lockStatus = new ReentrantLock();
-    private final int rpcPort;
     private final FafRpcCallbacks callbacks;
     private final GPGNetServer gpgNetServer;
+    private final RPCNotificationQueue notifications;
+    private final StatusCache statusCache;
 
     public void hostGame(String mapName) {
+        EventJournal.rpc("hostGame", mapName);
         callbacks.onHostGame(mapName);
     }
 
     public void joinGame(String remotePlayerLogin, long remotePlayerId) {
+        EventJournal.rpc("joinGame", remotePlayerLogin, remotePlayerId);
         callbacks.onJoinGame(remotePlayerLogin, (int) remotePlayerId);
     }
 
     public void connectToPeer(String remotePlayerLogin, long remotePlayerId, boolean offer) {
+        EventJournal.rpc("connectToPeer", remotePlayerLogin, remotePlayerId, offer);
         callbacks.onConnectToPeer(remotePlayerLogin, (int) remotePlayerId, offer);
     }
 
     public void disconnectFromPeer(long remotePlayerId) {
+        EventJournal.rpc("disconnectFromPeer", remotePlayerId);
         callbacks.onDisconnectFromPeer((int) remotePlayerId);
     }
 
     public void setLobbyInitMode(String lobbyInitMode) {
+        EventJournal.rpc("setLobbyInitMode", lobbyInitMode);
         gpgNetServer.setLobbyInitMode(LobbyInitMode.getByName(lobbyInitMode));
+        statusCache.invalidate();
         log.debug("LobbyInitMode set to {}", lobbyInitMode);
     }
 
     public void iceMsg(long remotePlayerId, Object msg) {
+        EventJournal.rpc("iceMsg", remotePlayerId, msg);
         boolean err = true;
 
         GameSession gameSession = IceAdapter.getGameSession();
@@ -68,7 +67,7 @@ public class RPCHandler {
             Peer peer = gameSession.getPeers().get((int) remotePlayerId);
             if (peer != null) { // This is highly unlikely, peer is present if connectToPeer was called first
                 try {
-                    peer.getIce().onIceMessageReceived(objectMapper.readValue((String) msg, CandidatesMessage.class));
+                    peer.getIce().onIceMessageReceived(readCandidatesMessage(msg));
                     err = false;
                 } catch (IOException e) {
                     log.error("Failed to parse iceMsg {}", msg, e);
@@ -84,89 +83,75 @@ public class RPCHandler {
         log.info("IceMsg received {}", msg);
     }
 
+    /**
+     * @param msg the message as json string, or as object if the client sends structured ice messages
+     */
+    private static CandidatesMessage readCandidatesMessage(Object msg) throws IOException {
+        if (msg instanceof String json) {
+            return RPCService.objectMapper.readValue(json, CandidatesMessage.class);
+        }
+
+        try {
+            return RPCService.objectMapper.convertValue(msg, CandidatesMessage.class);
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Negotiates the format of onIceMsg, the ice message is a json string by default (encoded twice)
+     *
+     * @param structured whether to send the ice message as object instead
+     * @return the format used from now on, older adapters do not know this method
+     */
+    public boolean setStructuredIceMsg(boolean structured) {
+        EventJournal.rpc("setStructuredIceMsg", structured);
+        RPCService.setStructuredIceMsg(structured);
+        log.info("Sending ice messages as {}", structured ? "object" : "json string");
+        return structured;
+    }
+
     public void sendToGpgNet(String header, Object... args) {
+        EventJournal.rpc("sendToGpgNet", header, args);
         callbacks.sendToGpgNet(header, args);
     }
 
     public void setIceServers(List<Map<String, Object>> iceServers) {
+        // Only the number of servers, the credentials do not belong into the journal
+        EventJournal.rpc("setIceServers", iceServers.size());
         GameSession.setIceServers(iceServers);
     }
 
     @Deprecated(forRemoval = true)
     @SneakyThrows
     public String status() {
-        IceStatus.IceGPGNetState gpgpnet = new IceStatus.IceGPGNetState(
-                gpgNetServer.getGpgnetPort(), gpgNetServer.isConnected(), gpgNetServer.getGameStateString(), "-");
+        return statusCache.getStatus();
+    }
 
-        List<IceStatus.IceRelay> relays = new ArrayList<>();
+    /**
+     * @return packet and byte counters of all peers as json, see {@link PeerTrafficCounters}, and the state of the
+     * notification queue to the client and the telemetry queue
+     */
+    @SneakyThrows
+    public String statistics() {
+        List<Map<String, Object>> peers = new ArrayList<>();
         GameSession gameSession = IceAdapter.getGameSession();
         if (gameSession != null) {
-            lockStatus.lock();
-            try {
-                gameSession.getPeers().values().stream()
-                        .map(peer -> {
-                            IceStatus.IceRelay.IceRelayICEState iceRelayICEState =
-                                    new IceStatus.IceRelay.IceRelayICEState(
-                                            peer.isLocalOffer(),
-                                            peer.getIce().getIceState().getMessage(),
-                                            "",
-                                            "",
-                                            peer.getIce().isConnected(),
-                                            Optional.ofNullable(peer.getIce().getComponent())
-                                                    .map(Component::getSelectedPair)
-                                                    .map(CandidatePair::getLocalCandidate)
-                                                    .map(Candidate::getHostAddress)
-                                                    .map(TransportAddress::toString)
-                                                    .orElse(""),
-                                            Optional.ofNullable(peer.getIce().getComponent())
-                                                    .map(Component::getSelectedPair)
-                                                    .map(CandidatePair::getRemoteCandidate)
-                                                    .map(Candidate::getHostAddress)
-                                                    .map(TransportAddress::toString)
-                                                    .orElse(""),
-                                            Optional.ofNullable(peer.getIce().getComponent())
-                                                    .map(Component::getSelectedPair)
-                                                    .map(CandidatePair::getLocalCandidate)
-                                                    .map(Candidate::getType)
-                                                    .map(CandidateType::toString)
-                                                    .orElse(""),
-                                            Optional.ofNullable(peer.getIce().getComponent())
-                                                    .map(Component::getSelectedPair)
-                                                    .map(CandidatePair::getRemoteCandidate)
-                                                    .map(Candidate::getType)
-                                                    .map(CandidateType::toString)
-                                                    .orElse(""),
-                                            -1.0);
-
-                            return new IceStatus.IceRelay(
-                                    peer.getRemoteId(),
-                                    peer.getRemoteLogin(),
-                                    peer.getFaSocket().getLocalPort(),
-                                    iceRelayICEState);
-                        })
-                        .forEach(relays::add);
-            } finally {
-                lockStatus.unlock();
-            }
+            gameSession.getPeers().values().forEach(peer -> peers.add(Map.of(
+                    "remote_player_id", peer.getRemoteId(),
+                    "remote_player_login", peer.getRemoteLogin(),
+                    "traffic", peer.getTrafficCounters().snapshot())));
         }
 
-        IceStatus status = new IceStatus(
-                IceAdapter.getVersion(),
-                GameSession.getIceServers().stream()
-                        .mapToInt(s -> s.getTurnAddresses().size()
-                                + s.getStunAddresses().size())
-                        .sum(),
-                gpgNetServer.getLobbyPort(),
-                gpgNetServer.getLobbyInitMode().getName(),
-                new IceStatus.IceOptions(
-                        IceAdapter.getId(), IceAdapter.getLogin(), rpcPort, gpgNetServer.getGpgnetPort()),
-                gpgpnet,
-                relays.toArray(new IceStatus.IceRelay[relays.size()]));
-
-        return objectMapper.writeValueAsString(status);
+        Map<String, Object> statistics = new HashMap<>();
+        statistics.put("peers", peers);
+        statistics.put("rpc_notifications", notifications.snapshot());
+        Debug.getTelemetryStatistics().ifPresent(telemetry -> statistics.put("telemetry", telemetry));
+        return RPCService.objectMapper.writeValueAsString(statistics);
     }
 
     public void quit() {
+        EventJournal.rpc("quit");
         log.warn("Close requested, stopping...");
         callbacks.close();
     }
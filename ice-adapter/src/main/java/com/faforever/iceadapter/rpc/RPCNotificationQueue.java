@@ -0,0 +1,196 @@
+package com.faforever.iceadapter.rpc;
+
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+import com.fasterxml.jackson.databind.annotation.JsonNaming;
+import com.nbarraille.jjsonrpc.JJsonPeer;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Ordered, bounded queue of notifications to the client, sent by a single thread
+ * Adding never blocks, so the ICE and GPGNet threads raising events are not stalled by a slow (or not yet connected)
+ * client. A state notification replaces a still queued one with the same key, the client only needs the latest state.
+ * If the queue is full, new state notifications are dropped and counted. Other notifications (GPGNet messages, ICE
+ * messages) are never dropped, losing one would break the session, they are queued beyond the capacity instead.
+ */
+@Slf4j
+class RPCNotificationQueue implements AutoCloseable {
+
+    static final int CAPACITY = 4096;
+
+    private Thread senderThread;
+
+    private final Lock lockQueue = new ReentrantLock();
+    private final Condition notEmpty = lockQueue.newCondition();
+    private final ArrayDeque<Notification> queue = new ArrayDeque<>();
+    // Queued notifications by coalescing key
+    private final Map<String, Notification> pendingStates = new HashMap<>();
+    private int maxSize = 0;
+    private volatile boolean running = true;
+
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private volatile long maxQueueTimeMillis = 0;
+
+    private static final class Notification {
+        private final String method;
+        private final List<Object> args;
+        private final String coalescingKey;
+        private final long queuedAt = System.nanoTime();
+
+        private Notification(String method, List<Object> args, String coalescingKey) {
+            this.method = method;
+            this.args = args;
+            this.coalescingKey = coalescingKey;
+        }
+    }
+
+    @JsonNaming(PropertyNamingStrategies.SnakeCaseStrategy.class)
+    public record Snapshot(
+            int queued, int maxQueued, long sent, long coalesced, long dropped, long failed, long maxQueueTimeMillis) {}
+
+    /**
+     * Starts sending, notifications are queued until the client connects
+     */
+    void start(CompletableFuture<JJsonPeer> peer) {
+        senderThread = Thread.ofVirtual().name("rpcNotifications").start(() -> senderThread(peer));
+    }
+
+    void add(String method, List<Object> args) {
+        add(method, args, null);
+    }
+
+    /**
+     * @param coalescingKey replaces a queued notification with the same key, null to never coalesce
+     */
+    void add(String method, List<Object> args, String coalescingKey) {
+        Notification notification = new Notification(method, args, coalescingKey);
+
+        lockQueue.lock();
+        try {
+            if (!running) {
+                return;
+            }
+
+            Notification previous = coalescingKey != null ? pendingStates.put(coalescingKey, notification) : null;
+            if (previous != null) {
+                // Queued at the end, so the latest state stays in order with the other notifications
+                queue.removeLastOccurrence(previous);
+                coalesced.increment();
+            } else if (queue.size() >= CAPACITY) {
+                if (coalescingKey != null) {
+                    pendingStates.remove(coalescingKey);
+                    dropped.increment();
+                    log.warn("RPC notification queue full, dropping {}", method);
+                    return;
+                }
+                if (queue.size() == CAPACITY) {
+                    log.warn("RPC notification queue full, queueing {} and further messages beyond capacity", method);
+                }
+            }
+
+            queue.add(notification);
+            maxSize = Math.max(maxSize, queue.size());
+            notEmpty.signal();
+        } finally {
+            lockQueue.unlock();
+        }
+    }
+
+    /**
+     * Drops all queued notifications, e.g. once the client is gone
+     */
+    void clear() {
+        lockQueue.lock();
+        try {
+            dropped.add(queue.size());
+            queue.clear();
+            pendingStates.clear();
+        } finally {
+            lockQueue.unlock();
+        }
+    }
+
+    Snapshot snapshot() {
+        int queued;
+        int maxQueued;
+        lockQueue.lock();
+        try {
+            queued = queue.size();
+            maxQueued = maxSize;
+        } finally {
+            lockQueue.unlock();
+        }
+        return new Snapshot(
+                queued,
+                maxQueued,
+                sent.sum(),
+                coalesced.sum(),
+                dropped.sum(),
+                failed.sum(),
+                maxQueueTimeMillis);
+    }
+
+    private Notification take() throws InterruptedException {
+        lockQueue.lock();
+        try {
+            while (true) {
+                Notification notification = queue.poll();
+                if (notification == null) {
+                    notEmpty.await();
+                } else {
+                    if (notification.coalescingKey != null) {
+                        pendingStates.remove(notification.coalescingKey);
+                    }
+                    return notification;
+                }
+            }
+        } finally {
+            lockQueue.unlock();
+        }
+    }
+
+    private void senderThread(CompletableFuture<JJsonPeer> peer) {
+        try {
+            JJsonPeer client = peer.get();
+            while (running) {
+                Notification notification = take();
+                try {
+                    client.sendNotification(notification.method, notification.args);
+                    sent.increment();
+                } catch (Exception e) {
+                    failed.increment();
+                    log.error("Failed to send RPC notification {}", notification.method, e);
+                }
+
+                long queueTimeMillis = (System.nanoTime() - notification.queuedAt) / 1_000_000;
+                if (queueTimeMillis > maxQueueTimeMillis) {
+                    maxQueueTimeMillis = queueTimeMillis;
+                }
+            }
+        } catch (InterruptedException e) {
+            log.debug("RPC notification sender interrupted");
+        } catch (Exception e) {
+            log.error("Error on fetching first peer, no RPC notifications are sent", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        if (senderThread != null) {
+            senderThread.interrupt();
+        }
+        clear();
+    }
+}
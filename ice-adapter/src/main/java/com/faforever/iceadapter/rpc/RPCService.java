@@ -15,6 +15,7 @@ import com.nbarraille.jjsonrpc.JJsonPeer;
 import com.nbarraille.jjsonrpc.TcpServer;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import lombok.extern.slf4j.Slf4j;
 
 /**
@@ -23,17 +24,23 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class RPCService implements AutoCloseable {
 
-    private static final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+    static final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
     private static TcpServer tcpServer;
+    private static RPCNotificationQueue notifications;
     private static volatile boolean skipRPCMessages = false;
+    private static volatile boolean structuredIceMsg = false;
 
     public void init(int port, GPGNetServer gpgNetServer, FafRpcCallbacks callbacks) {
         Debug.RPC_PORT = port;
         log.info("Creating RPC server on port {}", port);
 
-        RPCHandler rpcHandler = new RPCHandler(port, callbacks, gpgNetServer);
+        notifications = new RPCNotificationQueue();
+        StatusCache statusCache = new StatusCache(port, gpgNetServer);
+        Debug.register(statusCache);
+        RPCHandler rpcHandler = new RPCHandler(callbacks, gpgNetServer, notifications, statusCache);
         tcpServer = new TcpServer(port, rpcHandler);
         tcpServer.start();
+        notifications.start(tcpServer.getFirstPeer());
 
         debug().rpcStarted(tcpServer.getFirstPeer());
         tcpServer.getFirstPeer().thenAccept(firstPeer -> {
@@ -41,6 +48,7 @@ public class RPCService implements AutoCloseable {
                 GameState gameState = gpgNetServer.getGameState().orElse(null);
                 if (gameState == GameState.LAUNCHING) {
                     skipRPCMessages = true;
+                    notifications.clear();
                     log.warn("Lost connection to first RPC Peer. GameState: LAUNCHING, NOT STOPPING!");
                     if (InfoWindow.INSTANCE == null) {
                         Debug.ENABLE_INFO_WINDOW = true;
@@ -59,43 +67,55 @@ public class RPCService implements AutoCloseable {
 
     public void onConnectionStateChanged(String newState) {
         if (!skipRPCMessages) {
-            getPeerOrWait().sendNotification("onConnectionStateChanged", Arrays.asList(newState));
+            notifications.add("onConnectionStateChanged", List.of(newState), "onConnectionStateChanged");
         }
     }
 
+    /**
+     * Does not block, the GPGNet reader keeps reading while the client is slow
+     */
     public void onGpgNetMessageReceived(String header, List<Object> chunks) {
         if (!skipRPCMessages) {
-            getPeerOrWait().sendNotification("onGpgNetMessageReceived", Arrays.asList(header, chunks));
+            notifications.add("onGpgNetMessageReceived", Arrays.asList(header, chunks));
         }
     }
 
+    /**
+     * The message is sent as json string, or as object if the client negotiated it via setStructuredIceMsg
+     */
     public void onIceMsg(CandidatesMessage candidatesMessage) {
         if (!skipRPCMessages) {
             try {
-                getPeerOrWait()
-                        .sendNotification(
-                                "onIceMsg",
-                                Arrays.asList(
-                                        candidatesMessage.srcId(),
-                                        candidatesMessage.destId(),
-                                        objectMapper.writeValueAsString(candidatesMessage)));
+                Object msg = structuredIceMsg
+                        ? objectMapper.convertValue(candidatesMessage, Map.class)
+                        : objectMapper.writeValueAsString(candidatesMessage);
+                notifications.add(
+                        "onIceMsg", Arrays.asList(candidatesMessage.srcId(), candidatesMessage.destId(), msg));
             } catch (JsonProcessingException e) {
                 throw new RuntimeException(e);
             }
         }
     }
 
+    static void setStructuredIceMsg(boolean structured) {
+        structuredIceMsg = structured;
+    }
+
     public void onIceConnectionStateChanged(long localPlayerId, long remotePlayerId, String state) {
         if (!skipRPCMessages) {
-            getPeerOrWait()
-                    .sendNotification(
-                            "onIceConnectionStateChanged", Arrays.asList(localPlayerId, remotePlayerId, state));
+            notifications.add(
+                    "onIceConnectionStateChanged",
+                    Arrays.asList(localPlayerId, remotePlayerId, state),
+                    "onIceConnectionStateChanged/" + remotePlayerId);
         }
     }
 
     public void onConnected(long localPlayerId, long remotePlayerId, boolean connected) {
         if (!skipRPCMessages) {
-            getPeerOrWait().sendNotification("onConnected", Arrays.asList(localPlayerId, remotePlayerId, connected));
+            notifications.add(
+                    "onConnected",
+                    Arrays.asList(localPlayerId, remotePlayerId, connected),
+                    "onConnected/" + remotePlayerId);
         }
     }
 
@@ -115,6 +135,7 @@ public class RPCService implements AutoCloseable {
 
     @Override
     public void close() {
+        notifications.close();
         tcpServer.stop();
     }
 }
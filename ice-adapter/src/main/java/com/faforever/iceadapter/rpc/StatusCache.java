@@ -0,0 +1,210 @@
+package com.faforever.iceadapter.rpc;
+
+import com.faforever.iceadapter.IceAdapter;
+import com.faforever.iceadapter.IceStatus;
+import com.faforever.iceadapter.debug.Debugger;
+import com.faforever.iceadapter.gpgnet.GPGNetServer;
+import com.faforever.iceadapter.ice.GameSession;
+import com.faforever.iceadapter.ice.Peer;
+import com.faforever.iceadapter.telemetry.CoturnServer;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.nbarraille.jjsonrpc.JJsonPeer;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import org.ice4j.TransportAddress;
+import org.ice4j.ice.Candidate;
+import org.ice4j.ice.CandidatePair;
+import org.ice4j.ice.CandidateType;
+import org.ice4j.ice.Component;
+
+/**
+ * The status returned by the status RPC, kept up to date by the debug events
+ * The relay of a peer is only rebuilt when its state changes and the serialized status is cached until something
+ * changes, so polling the status is cheap.
+ */
+class StatusCache implements Debugger {
+
+    private final int rpcPort;
+    private final GPGNetServer gpgNetServer;
+
+    private final Map<Integer, IceStatus.IceRelay> relays = new ConcurrentSkipListMap<>();
+    // Incremented on every change, the cached status is rebuilt if it is outdated
+    private final AtomicLong version = new AtomicLong();
+
+    private final Lock lockStatus = new ReentrantLock();
+    private GameSession gameSession;
+    private long cachedVersion = -1;
+    private String cachedStatus;
+
+    StatusCache(int rpcPort, GPGNetServer gpgNetServer) {
+        this.rpcPort = rpcPort;
+        this.gpgNetServer = gpgNetServer;
+    }
+
+    /**
+     * @return the status as json, only serialized again if it changed since the last call
+     */
+    String getStatus() throws JsonProcessingException {
+        lockStatus.lock();
+        try {
+            GameSession currentGameSession = IceAdapter.getGameSession();
+            if (currentGameSession != gameSession) {
+                // Sessions are replaced without a debug event per peer
+                gameSession = currentGameSession;
+                relays.clear();
+                if (currentGameSession != null) {
+                    currentGameSession.getPeers().values().forEach(this::updateRelay);
+                }
+                invalidate();
+            }
+
+            long currentVersion = version.get();
+            if (currentVersion != cachedVersion) {
+                cachedStatus = RPCService.objectMapper.writeValueAsString(buildStatus());
+                cachedVersion = currentVersion;
+            }
+            return cachedStatus;
+        } finally {
+            lockStatus.unlock();
+        }
+    }
+
+    /**
+     * Marks the status as changed, for changes without a debug event
+     */
+    void invalidate() {
+        version.incrementAndGet();
+    }
+
+    private IceStatus buildStatus() {
+        IceStatus.IceGPGNetState gpgpnet = new IceStatus.IceGPGNetState(
+                gpgNetServer.getGpgnetPort(), gpgNetServer.isConnected(), gpgNetServer.getGameStateString(), "-");
+
+        return new IceStatus(
+                IceAdapter.getVersion(),
+                GameSession.getIceServers().stream()
+                        .mapToInt(s -> s.getTurnAddresses().size()
+                                + s.getStunAddresses().size())
+                        .sum(),
+                gpgNetServer.getLobbyPort(),
+                gpgNetServer.getLobbyInitMode().getName(),
+                new IceStatus.IceOptions(
+                        IceAdapter.getId(), IceAdapter.getLogin(), rpcPort, gpgNetServer.getGpgnetPort()),
+                gpgpnet,
+                relays.values().toArray(new IceStatus.IceRelay[0]));
+    }
+
+    private void updateRelay(Peer peer) {
+        GameSession currentGameSession = IceAdapter.getGameSession();
+        if (currentGameSession == null || currentGameSession.getPeers().get(peer.getRemoteId()) != peer) {
+            // Late event of a peer that is already gone
+            return;
+        }
+
+        Optional<CandidatePair> selectedPair =
+                Optional.ofNullable(peer.getIce().getComponent()).map(Component::getSelectedPair);
+
+        IceStatus.IceRelay.IceRelayICEState iceRelayICEState = new IceStatus.IceRelay.IceRelayICEState(
+                peer.isLocalOffer(),
+                peer.getIce().getIceState().getMessage(),
+                "",
+                "",
+                peer.getIce().isConnected(),
+                selectedPair
+                        .map(CandidatePair::getLocalCandidate)
+                        .map(Candidate::getHostAddress)
+                        .map(TransportAddress::toString)
+                        .orElse(""),
+                selectedPair
+                        .map(CandidatePair::getRemoteCandidate)
+                        .map(Candidate::getHostAddress)
+                        .map(TransportAddress::toString)
+                        .orElse(""),
+                selectedPair
+                        .map(CandidatePair::getLocalCandidate)
+                        .map(Candidate::getType)
+                        .map(CandidateType::toString)
+                        .orElse(""),
+                selectedPair
+                        .map(CandidatePair::getRemoteCandidate)
+                        .map(Candidate::getType)
+                        .map(CandidateType::toString)
+                        .orElse(""),
+                peer.getIce().getTimeToConnected());
+
+        relays.put(
+                peer.getRemoteId(),
+                new IceStatus.IceRelay(
+                        peer.getRemoteId(),
+                        peer.getRemoteLogin(),
+                        peer.getFaSocket().getLocalPort(),
+                        iceRelayICEState));
+        invalidate();
+    }
+
+    private void updateRelay(int remotePlayerId) {
+        Optional.ofNullable(IceAdapter.getGameSession())
+                .map(session -> session.getPeers().get(remotePlayerId))
+                .ifPresent(this::updateRelay);
+    }
+
+    @Override
+    public void startupComplete() {
+        invalidate();
+    }
+
+    @Override
+    public void rpcStarted(CompletableFuture<JJsonPeer> peerFuture) {}
+
+    @Override
+    public void gpgnetStarted() {
+        invalidate();
+    }
+
+    @Override
+    public void gpgnetConnectedDisconnected() {
+        invalidate();
+    }
+
+    @Override
+    public void gameStateChanged() {
+        invalidate();
+    }
+
+    @Override
+    public void connectToPeer(int id, String login, boolean localOffer) {
+        updateRelay(id);
+    }
+
+    @Override
+    public void disconnectFromPeer(int id) {
+        relays.remove(id);
+        invalidate();
+    }
+
+    @Override
+    public void peerStateChanged(Peer peer) {
+        updateRelay(peer);
+    }
+
+    @Override
+    public void peerConnectivityUpdate(Peer peer) {
+        // Latency and quality are not part of the status
+    }
+
+    @Override
+    public void peerConnected(Peer peer, long timeToConnectMillis) {
+        updateRelay(peer);
+    }
+
+    @Override
+    public void updateCoturnList(Collection<CoturnServer> servers) {
+        invalidate();
+    }
+}
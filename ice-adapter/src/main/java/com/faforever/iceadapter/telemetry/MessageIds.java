@@ -0,0 +1,34 @@
+package com.faforever.iceadapter.telemetry;
+
+import java.security.SecureRandom;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cheap, increasing ids for telemetry messages, replacing UUID.randomUUID() which needs SecureRandom per message
+ * The ids are version 7 UUIDs: a millisecond timestamp and a counter, plus random bits drawn once per adapter to keep
+ * ids of different adapters apart.
+ */
+public final class MessageIds {
+
+    private static final long INSTANCE_BITS = (new SecureRandom().nextLong() & 0x3FFFFFFFL) << 32;
+    private static final AtomicLong sequence = new AtomicLong();
+
+    private MessageIds() {}
+
+    public static UUID next() {
+        long sequenceNumber = sequence.incrementAndGet();
+        // 48 bit timestamp, version 7, upper 12 bits of the counter
+        long mostSigBits = (System.currentTimeMillis() << 16) | 0x7000L | ((sequenceNumber >>> 32) & 0x0FFFL);
+        // Variant 2, 30 random bits, lower 32 bits of the counter
+        long leastSigBits = 0x8000000000000000L | INSTANCE_BITS | (sequenceNumber & 0xFFFFFFFFL);
+        return new UUID(mostSigBits, leastSigBits);
+    }
+
+    /**
+     * @return the time in ms the id was created at
+     */
+    public static long getTimestamp(UUID messageId) {
+        return messageId.getMostSignificantBits() >>> 16;
+    }
+}
@@ -3,5 +3,14 @@ package com.faforever.iceadapter.telemetry;
 import java.time.Instant;
 import java.util.UUID;
 
-public record UpdatePeerConnectivity(UUID messageId, int peerPlayerId, Float averageRTT, Instant lastReceived)
+public record UpdatePeerConnectivity(
+        UUID messageId,
+        int peerPlayerId,
+        Float averageRTT,
+        Instant lastReceived,
+        Float rttP50,
+        Float rttP95,
+        Float rttP99,
+        Float jitter,
+        Float packetLoss)
         implements OutgoingMessageV1 {}
@@ -0,0 +1,25 @@
+package com.faforever.iceadapter.telemetry;
+
+import java.util.UUID;
+
+public record UpdatePeerStatistics(
+        UUID messageId,
+        int peerPlayerId,
+        long packetsToIce,
+        long bytesToIce,
+        long packetsFromIce,
+        long bytesFromIce,
+        long droppedToIce,
+        long droppedFromIce,
+        long oversizedPackets,
+        long sendFailuresToIce,
+        long sendFailuresToFa,
+        long failovers,
+        long duplicatesSent,
+        long duplicatesDropped,
+        long paritySent,
+        long recoveredPackets,
+        long datagramsSaved,
+        float datagramsSavedPerSecond,
+        long framingBytesSaved)
+        implements OutgoingMessageV1 {}
@@ -1,6 +1,7 @@
 package com.faforever.iceadapter.util;
 
 import java.util.concurrent.locks.Lock;
+import java.util.function.Supplier;
 import lombok.experimental.UtilityClass;
 
 @UtilityClass
@@ -13,4 +14,13 @@ public class LockUtil {
             lock.unlock();
         }
     }
+
+    public <T> T executeWithLock(Lock lock, Supplier<T> task) {
+        lock.lock();
+        try {
+            return task.get();
+        } finally {
+            lock.unlock();
+        }
+    }
 }
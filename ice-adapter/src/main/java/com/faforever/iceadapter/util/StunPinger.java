@@ -0,0 +1,171 @@
+package com.faforever.iceadapter.util;
+
+import com.faforever.iceadapter.IceAdapter;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+import lombok.extern.slf4j.Slf4j;
+
+/*
+ * Measures the round trip time to a STUN/TURN server by sending STUN binding requests over UDP.
+ * This measures the path that is actually used for relaying and does not rely on ICMP being allowed.
+ */
+@Slf4j
+public class StunPinger {
+    static final int STUN_HEADER_LENGTH = 20;
+    static final int MAGIC_COOKIE = 0x2112A442;
+    static final short BINDING_REQUEST = 0x0001;
+    static final short BINDING_SUCCESS_RESPONSE = 0x0101;
+    static final short BINDING_ERROR_RESPONSE = 0x0111;
+
+    static final int RESPONSE_TIMEOUT = 1000;
+
+    /*
+     * Round trip times in ms, jitter is the mean deviation between consecutive samples.
+     */
+    public record Latency(double min, double avg, double jitter, int sent, int received) {}
+
+    /*
+     * Get the round trip time to an address, fails if the server did not answer any request.
+     */
+    public static CompletableFuture<Latency> getLatency(String host, int port, int count) {
+        return CompletableFuture.supplyAsync(
+                () -> {
+                    InetSocketAddress address = new InetSocketAddress(host, port);
+                    try {
+                        Latency latency = measure(address, count);
+                        log.debug(
+                                "Pinged {} via STUN with an RTT of min/avg/jitter = {}/{}/{} ms, {}/{} answered",
+                                address,
+                                latency.min(),
+                                latency.avg(),
+                                latency.jitter(),
+                                latency.received(),
+                                latency.sent());
+                        return latency;
+                    } catch (IOException | RuntimeException e) {
+                        log.warn("Failed to ping {} via STUN", address);
+                        throw new CompletionException(e);
+                    }
+                },
+                IceAdapter.getExecutor());
+    }
+
+    /*
+     * Same as getLatency, blocking the calling thread.
+     */
+    public static Latency measure(InetSocketAddress address, int count) throws IOException {
+        if (address.isUnresolved()) {
+            throw new IOException("Could not resolve " + address.getHostString());
+        }
+
+        byte[] request = new byte[STUN_HEADER_LENGTH];
+        byte[] response = new byte[512];
+        DatagramPacket responsePacket = new DatagramPacket(response, response.length);
+
+        int received = 0;
+        double min = Double.MAX_VALUE;
+        double sum = 0;
+        double deviationSum = 0;
+        double previousRtt = -1;
+
+        try (DatagramSocket socket = new DatagramSocket()) {
+            socket.setSoTimeout(RESPONSE_TIMEOUT);
+
+            for (int i = 0; i < count; i++) {
+                byte[] transactionId = writeBindingRequest(request);
+                long sendTime = System.nanoTime();
+                socket.send(new DatagramPacket(request, request.length, address));
+
+                if (!awaitResponse(socket, responsePacket, transactionId, sendTime)) {
+                    continue;
+                }
+
+                double rtt = (System.nanoTime() - sendTime) / 1_000_000.0;
+                received++;
+                min = Math.min(min, rtt);
+                sum += rtt;
+                if (previousRtt >= 0) {
+                    deviationSum += Math.abs(rtt - previousRtt);
+                }
+                previousRtt = rtt;
+            }
+        }
+
+        if (received == 0) {
+            throw new IOException("No STUN response from " + address);
+        }
+
+        return new Latency(min, sum / received, received > 1 ? deviationSum / (received - 1) : 0, count, received);
+    }
+
+    /*
+     * Writes a binding request with a new random transaction id into the buffer, returns the transaction id.
+     */
+    static byte[] writeBindingRequest(byte[] request) {
+        byte[] transactionId = new byte[12];
+        ThreadLocalRandom.current().nextBytes(transactionId);
+
+        ByteBuffer.wrap(request)
+                .putShort(BINDING_REQUEST)
+                .putShort((short) 0) // no attributes
+                .putInt(MAGIC_COOKIE)
+                .put(transactionId);
+        return transactionId;
+    }
+
+    /*
+     * Receives until a response to the given transaction arrives, ignoring late answers to earlier requests.
+     */
+    private static boolean awaitResponse(
+            DatagramSocket socket, DatagramPacket responsePacket, byte[] transactionId, long sendTime)
+            throws IOException {
+        while (true) {
+            int remaining = RESPONSE_TIMEOUT - (int) ((System.nanoTime() - sendTime) / 1_000_000);
+            if (remaining <= 0) {
+                return false;
+            }
+            socket.setSoTimeout(remaining);
+
+            try {
+                responsePacket.setLength(responsePacket.getData().length);
+                socket.receive(responsePacket);
+            } catch (SocketTimeoutException e) {
+                return false;
+            }
+
+            if (isResponse(responsePacket, transactionId)) {
+                return true;
+            }
+        }
+    }
+
+    static boolean isResponse(DatagramPacket packet, byte[] transactionId) {
+        if (packet.getLength() < STUN_HEADER_LENGTH) {
+            return false;
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(packet.getData(), packet.getOffset(), packet.getLength());
+        short type = buffer.getShort();
+        buffer.getShort(); // length
+        if (buffer.getInt() != MAGIC_COOKIE) {
+            return false;
+        }
+
+        // Any response proves reachability, an error (e.g. unauthorized on TURN) is answered just as fast
+        if (type != BINDING_SUCCESS_RESPONSE && type != BINDING_ERROR_RESPONSE) {
+            return false;
+        }
+
+        int offset = packet.getOffset() + 8;
+        return Arrays.equals(
+                packet.getData(), offset, offset + transactionId.length, transactionId, 0, transactionId.length);
+    }
+}
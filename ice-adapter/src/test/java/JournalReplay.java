@@ -0,0 +1,188 @@
+import com.faforever.iceadapter.IceAdapter;
+import com.faforever.iceadapter.debug.EventJournal;
+import com.faforever.iceadapter.gpgnet.FaDataInputStream;
+import com.faforever.iceadapter.gpgnet.FaDataOutputStream;
+import com.faforever.iceadapter.gpgnet.LobbyInitMode;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import lombok.extern.slf4j.Slf4j;
+import picocli.CommandLine;
+
+/**
+ * Replays a session recorded with --event-journal against a local adapter
+ * RPC calls are made via the FafRpcCallbacks of the adapter, GPGNet messages are sent by a fake game connected to the
+ * GPGNet server. Remote peers are not simulated, so iceMsg/setIceServers are skipped and the recorded ICE states are
+ * only printed for comparison. Reports how late each event was dispatched and the messages the adapter sent to the
+ * game, to compare timings between versions.
+ *
+ * Usage: JournalReplay journal.jsonl [speed, e.g. 10 for 10 times faster, 0 for as fast as possible]
+ */
+@Slf4j
+public class JournalReplay {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private static long replayStart;
+    private static FaDataOutputStream gameOut;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Usage: JournalReplay journal.jsonl [speed]");
+            return;
+        }
+        double speed = args.length > 1 ? Double.parseDouble(args[1]) : 1.0;
+
+        List<JsonNode> events = new ArrayList<>();
+        for (String line : Files.readAllLines(Path.of(args[0]))) {
+            events.add(objectMapper.readTree(line));
+        }
+        JsonNode start = events.getFirst();
+        if (!EventJournal.SOURCE_JOURNAL.equals(start.get("source").asText())) {
+            throw new IllegalArgumentException("Not an event journal, the first event must be the journal start");
+        }
+        JsonNode header = start.get("args");
+        System.out.printf(
+                "Replaying %d events of game %d, player %d (%s), recorded with version %s at speed %s%n",
+                events.size(),
+                header.get(2).asInt(),
+                header.get(1).asInt(),
+                header.get(3).asText(),
+                header.get(0).asText(),
+                speed == 0 ? "max" : speed);
+
+        int gpgnetPort = freePort();
+        IceAdapter adapter = new IceAdapter();
+        new CommandLine(adapter)
+                .setUnmatchedArgumentsAllowed(true)
+                .execute(
+                        "--id", header.get(1).asText(),
+                        "--game-id", header.get(2).asText(),
+                        "--login", header.get(3).asText(),
+                        "--rpc-port", String.valueOf(freePort()),
+                        "--gpgnet-port", String.valueOf(gpgnetPort),
+                        // Keep replays out of the telemetry of real games
+                        "--telemetry-server", "ws://127.0.0.1:" + freePort(),
+                        "--telemetry-recording-size", "0");
+
+        long maxLateMicros = 0;
+        long totalLateMicros = 0;
+        int dispatched = 0;
+        replayStart = System.nanoTime();
+        for (JsonNode event : events) {
+            long time = event.get("time").asLong();
+            long due = speed == 0 ? 0 : (long) (time / speed);
+            long now = elapsedMicros();
+            if (due > now) {
+                Thread.sleep((due - now) / 1000, (int) ((due - now) % 1000) * 1000);
+            }
+
+            long lateMicros = Math.max(0, elapsedMicros() - due);
+            String source = event.get("source").asText();
+            String name = event.get("name").asText();
+            JsonNode eventArgs = event.get("args");
+            boolean replayed =
+                    switch (source) {
+                        case EventJournal.SOURCE_RPC -> replayRpc(adapter, name, eventArgs);
+                        case EventJournal.SOURCE_GPGNET -> replayGpgnet(gpgnetPort, name, eventArgs);
+                        default -> false;
+                    };
+
+            System.out.printf(
+                    "%10.3f ms %-7s %-8s %s %s%s%n",
+                    elapsedMicros() / 1000.0,
+                    replayed ? "replay" : "skip",
+                    source,
+                    name,
+                    eventArgs,
+                    replayed ? " (late %.3f ms)".formatted(lateMicros / 1000.0) : "");
+            if (replayed) {
+                maxLateMicros = Math.max(maxLateMicros, lateMicros);
+                totalLateMicros += lateMicros;
+                dispatched++;
+            }
+        }
+
+        System.out.printf(
+                "Replayed %d events, late by %.3f ms on average, at most %.3f ms%n",
+                dispatched,
+                dispatched == 0 ? 0 : totalLateMicros / 1000.0 / dispatched,
+                maxLateMicros / 1000.0);
+
+        // Collect the last messages of the adapter
+        Thread.sleep(2000);
+        IceAdapter.close(0);
+    }
+
+    private static boolean replayRpc(IceAdapter adapter, String method, JsonNode args) {
+        switch (method) {
+            case "hostGame" -> adapter.onHostGame(args.get(0).asText());
+            case "joinGame" -> adapter.onJoinGame(args.get(0).asText(), args.get(1).asInt());
+            case "connectToPeer" -> adapter.onConnectToPeer(
+                    args.get(0).asText(), args.get(1).asInt(), args.get(2).asBoolean());
+            case "disconnectFromPeer" -> adapter.onDisconnectFromPeer(args.get(0).asInt());
+            case "sendToGpgNet" -> adapter.sendToGpgNet(args.get(0).asText(), toGpgnetArgs(args.get(1)));
+            case "setLobbyInitMode" -> adapter.setLobbyInitMode(LobbyInitMode.getByName(args.get(0).asText()));
+            default -> {
+                // iceMsg and setIceServers need the remote peers and servers of the recorded session
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean replayGpgnet(int gpgnetPort, String command, JsonNode args) throws IOException {
+        if (gameOut == null) {
+            connectGame(gpgnetPort);
+        }
+
+        gameOut.writeMessage(command, toGpgnetArgs(args));
+        gameOut.flush();
+        return true;
+    }
+
+    /**
+     * Connects the fake game and prints everything the adapter sends to it
+     */
+    private static void connectGame(int gpgnetPort) throws IOException {
+        Socket socket = new Socket("127.0.0.1", gpgnetPort);
+        gameOut = new FaDataOutputStream(socket.getOutputStream());
+        FaDataInputStream gameIn = new FaDataInputStream(socket.getInputStream());
+        Thread.ofVirtual().name("fakeGame").start(() -> {
+            try {
+                while (true) {
+                    String command = gameIn.readString();
+                    List<Object> chunks = gameIn.readChunks();
+                    System.out.printf("%10.3f ms to game  %s %s%n", elapsedMicros() / 1000.0, command, chunks);
+                }
+            } catch (IOException e) {
+                log.info("Fake game disconnected");
+            }
+        });
+    }
+
+    private static Object[] toGpgnetArgs(JsonNode args) {
+        Object[] gpgnetArgs = new Object[args.size()];
+        for (int i = 0; i < args.size(); i++) {
+            JsonNode arg = args.get(i);
+            gpgnetArgs[i] = arg.isNumber() ? (Object) arg.asInt() : arg.asText();
+        }
+        return gpgnetArgs;
+    }
+
+    private static long elapsedMicros() {
+        return (System.nanoTime() - replayStart) / 1000;
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,805 @@
+import com.faforever.iceadapter.gpgnet.FaDataInputStream;
+import com.faforever.iceadapter.gpgnet.FaDataOutputStream;
+import com.faforever.iceadapter.util.StunPinger;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.nbarraille.jjsonrpc.JJsonPeer;
+import com.nbarraille.jjsonrpc.TcpClient;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Headless bench for large lobbies, all players run on this machine
+ * Starts one adapter process per player (the adapter keeps its state in static fields, so they cannot share a JVM),
+ * acts as FAF client for all of them by relaying the ICE messages via RPC and runs a fake game per player that sends
+ * echo packets to every peer like client.forgedalliance.ForgedAlliance does. A minimal STUN server on localhost stands
+ * in for coturn (the StunPinger is checked against it first), there is no TURN server as the host candidates always
+ * work on loopback.
+ * Reports the time until all peers are connected, the round trip time per peer and the CPU time of every adapter.
+ * With --relay-loss the candidates exchanged between the adapters are rewritten to lossy relays, so all ICE traffic
+ * loses that share of packets in each direction. The stalls of the game traffic (gaps of more than 300 ms) then show
+ * how well e.g. --packet-duplication or --fec-group-size cope with loss.
+ *
+ * Usage: LoopbackBench [player counts, e.g. 2,4,8,16,32] [seconds to measure] [--relay-loss 0 to 1]
+ * [additional adapter options...]
+ */
+@Slf4j
+public class LoopbackBench {
+
+    private static final int GAME_ID = 4711;
+    private static final int ECHO_INTERVAL = 100;
+    private static final int ECHO_DATA_SIZE = 60; // FA sends 2 packets per tick, one ~15 bytes, one 30-70 bytes
+    private static final String ECHO_REQ = "echoReq";
+    private static final String ECHO_RES = "echoRes";
+    private static final Duration STARTUP_TIMEOUT = Duration.ofSeconds(30);
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(60);
+    // FA runs in lockstep, a peer missing for a few ticks stalls the simulation for everyone
+    private static final long STALL_GAP = TimeUnit.MILLISECONDS.toNanos(300);
+    private static final String RELAY_LOSS_OPTION = "--relay-loss";
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private static final List<Process> processes = new CopyOnWriteArrayList<>();
+
+    public static void main(String[] args) throws Exception {
+        int[] playerCounts = args.length > 0
+                ? Arrays.stream(args[0].split(",")).mapToInt(Integer::parseInt).toArray()
+                : new int[] {2, 4, 8};
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+        List<String> adapterOptions =
+                new ArrayList<>(args.length > 2 ? List.of(args).subList(2, args.length) : List.of());
+        double relayLoss = 0;
+        int relayLossIndex = adapterOptions.indexOf(RELAY_LOSS_OPTION);
+        if (relayLossIndex >= 0) {
+            relayLoss = Double.parseDouble(adapterOptions.get(relayLossIndex + 1));
+            adapterOptions.subList(relayLossIndex, relayLossIndex + 2).clear();
+        }
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> processes.forEach(Process::destroyForcibly)));
+
+        List<String> results = new ArrayList<>();
+        try (StunServer stunServer = new StunServer()) {
+            checkStunPinger(stunServer.getPort());
+            for (int players : playerCounts) {
+                if (players < 2 || players > 32) {
+                    throw new IllegalArgumentException("Player count must be between 2 and 32: " + players);
+                }
+                results.add(new Bench(players, seconds, adapterOptions, relayLoss, stunServer.getPort()).run());
+            }
+        }
+
+        System.out.printf(
+                "%nplayers  ice connected  echo connected  rtt avg  rtt p95  rtt max  loss   stalls  longest stall"
+                        + "  cpu avg  cpu max%n");
+        results.forEach(System.out::println);
+        System.exit(0);
+    }
+
+    /**
+     * The adapters rank the ice servers by the RTT measured with the StunPinger, check it against the stand-in first
+     */
+    private static void checkStunPinger(int stunPort) throws IOException {
+        StunPinger.Latency latency = StunPinger.measure(new InetSocketAddress("127.0.0.1", stunPort), 5);
+        System.out.printf(
+                "STUN stand-in answered %d/%d binding requests, rtt min/avg %.2f/%.2f ms%n",
+                latency.received(),
+                latency.sent(),
+                latency.min(),
+                latency.avg());
+        if (latency.received() != latency.sent()) {
+            throw new IllegalStateException("StunPinger lost binding requests on localhost");
+        }
+    }
+
+    /**
+     * One run with a fixed number of players
+     */
+    private static class Bench {
+
+        private final int playerCount;
+        private final int seconds;
+        private final List<String> adapterOptions;
+        private final double relayLoss;
+        private final int stunPort;
+
+        private final Map<Integer, Player> players = new ConcurrentHashMap<>();
+        // By recipient and candidate address
+        private final Map<String, LossyRelay> relays = new ConcurrentHashMap<>();
+        private final CountDownLatch lobbies;
+        private final CountDownLatch iceConnected;
+        private final CountDownLatch echoConnected;
+        private long startNanos;
+        private volatile long iceConnectedNanos;
+        private volatile long echoConnectedNanos;
+
+        Bench(int playerCount, int seconds, List<String> adapterOptions, double relayLoss, int stunPort) {
+            this.playerCount = playerCount;
+            this.seconds = seconds;
+            this.adapterOptions = adapterOptions;
+            this.relayLoss = relayLoss;
+            this.stunPort = stunPort;
+
+            int pairs = playerCount * (playerCount - 1);
+            lobbies = new CountDownLatch(playerCount);
+            iceConnected = new CountDownLatch(pairs);
+            echoConnected = new CountDownLatch(pairs);
+        }
+
+        String run() throws Exception {
+            System.out.printf(
+                    "%n=== %d players, measuring %d s, %.1f%% relay loss ===%n",
+                    playerCount,
+                    seconds,
+                    relayLoss * 100);
+            try {
+                for (int id = 1; id <= playerCount; id++) {
+                    Player player = new Player(this, id);
+                    players.put(id, player);
+                    player.start();
+                }
+                for (Player player : players.values()) {
+                    player.connect();
+                }
+                if (!lobbies.await(STARTUP_TIMEOUT.toSeconds(), TimeUnit.SECONDS)) {
+                    throw new IllegalStateException("Not all games reached the lobby");
+                }
+
+                startNanos = System.nanoTime();
+                Player host = players.get(1);
+                host.rpc("hostGame", "bench");
+                for (int id = 2; id <= playerCount; id++) {
+                    players.get(id).rpc("joinGame", host.login, host.id);
+                    host.rpc("connectToPeer", players.get(id).login, id, true);
+                }
+                // Full mesh, the player joining later answers the offer of the players already in the lobby
+                for (int id = 2; id <= playerCount; id++) {
+                    for (int remoteId = id + 1; remoteId <= playerCount; remoteId++) {
+                        Player player = players.get(id);
+                        Player remote = players.get(remoteId);
+                        player.rpc("connectToPeer", remote.login, remote.id, true);
+                        remote.rpc("connectToPeer", player.login, player.id, false);
+                    }
+                }
+
+                boolean connected = iceConnected.await(CONNECT_TIMEOUT.toSeconds(), TimeUnit.SECONDS)
+                        && echoConnected.await(CONNECT_TIMEOUT.toSeconds(), TimeUnit.SECONDS);
+                if (!connected) {
+                    System.out.printf(
+                            "Timeout, %d of %d connections missing on ICE, %d on echo%n",
+                            iceConnected.getCount(),
+                            playerCount * (playerCount - 1),
+                            echoConnected.getCount());
+                }
+
+                return measure(connected);
+            } finally {
+                players.values().forEach(Player::close);
+                relays.values().forEach(LossyRelay::close);
+            }
+        }
+
+        /**
+         * Points the UDP candidates of the ICE message to lossy relays forwarding to them, if relay loss is set
+         *
+         * @param recipientId the player the message is for, every player gets its own relays
+         */
+        Object relayCandidates(int recipientId, Object message) {
+            if (relayLoss <= 0) {
+                return message;
+            }
+
+            try {
+                JsonNode json = message instanceof String string
+                        ? objectMapper.readTree(string)
+                        : objectMapper.valueToTree(message);
+                for (JsonNode candidate : json.get("candidates")) {
+                    if (!"udp".equalsIgnoreCase(candidate.get("protocol").asText())) {
+                        continue;
+                    }
+
+                    InetSocketAddress target = new InetSocketAddress(
+                            candidate.get("ip").asText(), candidate.get("port").asInt());
+                    LossyRelay relay = relays.computeIfAbsent(
+                            recipientId + "/" + target, key -> new LossyRelay(target, relayLoss));
+                    ((ObjectNode) candidate).put("port", relay.getPort());
+                }
+                return objectMapper.writeValueAsString(json);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private String measure(boolean connected) throws InterruptedException {
+            players.values().forEach(Player::startMeasurement);
+            long measureStart = System.nanoTime();
+            Thread.sleep(seconds * 1000L);
+            double wallMillis = (System.nanoTime() - measureStart) / 1e6;
+
+            List<Long> allRtts = new ArrayList<>();
+            long sent = 0;
+            long received = 0;
+            long stalls = 0;
+            long longestStall = 0;
+            double cpuSum = 0;
+            double cpuMax = 0;
+            System.out.printf("%nplayer  peer  rtt avg  rtt p95  rtt max  sent  recv  stalls  longest stall%n");
+            for (int id = 1; id <= playerCount; id++) {
+                Player player = players.get(id);
+                for (int remoteId = 1; remoteId <= playerCount; remoteId++) {
+                    EchoStats stats = player.echoStats.get(remoteId);
+                    if (stats == null) {
+                        continue;
+                    }
+
+                    List<Long> rtts = stats.getRtts();
+                    allRtts.addAll(rtts);
+                    sent += stats.sent.get();
+                    received += rtts.size();
+                    stalls += stats.getStalls();
+                    longestStall = Math.max(longestStall, stats.getLongestStall());
+                    System.out.printf(
+                            "%6d  %4d  %s  %s  %s  %4d  %4d  %6d  %13s%n",
+                            id,
+                            remoteId,
+                            formatMillis(average(rtts)),
+                            formatMillis(percentile(rtts, 0.95)),
+                            formatMillis(percentile(rtts, 1.0)),
+                            stats.sent.get(),
+                            rtts.size(),
+                            stats.getStalls(),
+                            formatMillis(stats.getLongestStall()));
+                }
+
+                double cpu = player.getCpuMillisSinceMeasurementStart() / wallMillis * 100;
+                cpuSum += cpu;
+                cpuMax = Math.max(cpuMax, cpu);
+                System.out.printf(
+                        "player %d: %.1f%% cpu, %.0f ms cpu until connected (including startup)%n",
+                        id,
+                        cpu,
+                        player.connectCpuMillis);
+            }
+
+            String timeout = "timeout";
+            return "%7d  %13s  %14s  %s  %s  %s  %4.1f%%  %6d  %13s  %6.1f%%  %6.1f%%"
+                    .formatted(
+                            playerCount,
+                            connected ? formatMillis(iceConnectedNanos - startNanos) : timeout,
+                            connected ? formatMillis(echoConnectedNanos - startNanos) : timeout,
+                            formatMillis(average(allRtts)),
+                            formatMillis(percentile(allRtts, 0.95)),
+                            formatMillis(percentile(allRtts, 1.0)),
+                            sent == 0 ? 0.0 : Math.max(0, sent - received) * 100.0 / sent,
+                            stalls,
+                            formatMillis(longestStall),
+                            cpuSum / playerCount,
+                            cpuMax);
+        }
+
+        void onIceConnected() {
+            iceConnected.countDown();
+            if (iceConnected.getCount() == 0) {
+                iceConnectedNanos = System.nanoTime();
+            }
+        }
+
+        void onEchoConnected() {
+            echoConnected.countDown();
+            if (echoConnected.getCount() == 0) {
+                echoConnectedNanos = System.nanoTime();
+            }
+        }
+    }
+
+    /**
+     * An adapter process, the RPC connection to it (standing in for the FAF client) and the fake game
+     * Public, as the RPC notifications of the adapter are dispatched to the on* methods via reflection.
+     */
+    public static class Player {
+
+        private final Bench bench;
+        private final int id;
+        private final String login;
+        private final int rpcPort;
+        private final int gpgnetPort;
+        private final DatagramSocket lobbySocket;
+        private final Random random = new Random();
+
+        private final Map<Integer, SocketAddress> peerAddresses = new ConcurrentHashMap<>();
+        private final Map<Integer, EchoStats> echoStats = new ConcurrentHashMap<>();
+        private final Map<Integer, Boolean> iceConnected = new ConcurrentHashMap<>();
+
+        private Process process;
+        private JJsonPeer rpcPeer;
+        private Socket gpgnetSocket;
+        private FaDataOutputStream gameOut;
+        private volatile boolean running = true;
+        private double connectCpuMillis;
+        private double measurementStartCpuMillis;
+
+        Player(Bench bench, int id) throws IOException {
+            this.bench = bench;
+            this.id = id;
+            this.login = "bench" + id;
+            this.rpcPort = freePort();
+            this.gpgnetPort = freePort();
+            this.lobbySocket = new DatagramSocket(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        }
+
+        void start() throws IOException {
+            List<String> command = new ArrayList<>(List.of(
+                    ProcessHandle.current().info().command().orElse("java"),
+                    "-cp",
+                    System.getProperty("java.class.path"),
+                    "com.faforever.iceadapter.IceAdapter",
+                    "--id",
+                    String.valueOf(id),
+                    "--game-id",
+                    String.valueOf(GAME_ID),
+                    "--login",
+                    login,
+                    "--rpc-port",
+                    String.valueOf(rpcPort),
+                    "--gpgnet-port",
+                    String.valueOf(gpgnetPort),
+                    "--lobby-port",
+                    String.valueOf(lobbySocket.getLocalPort()),
+                    // Keep the bench out of the telemetry of real games
+                    "--telemetry-server",
+                    "ws://127.0.0.1:" + freePort(),
+                    "--telemetry-recording-size",
+                    "0"));
+            command.addAll(bench.adapterOptions);
+
+            process = new ProcessBuilder(command)
+                    .redirectErrorStream(true)
+                    .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                    .start();
+            processes.add(process);
+        }
+
+        /**
+         * Connects to the RPC server and the GPGNet server of the adapter, once they are up
+         */
+        void connect() throws IOException, InterruptedException {
+            long deadline = System.nanoTime() + STARTUP_TIMEOUT.toNanos();
+            while (rpcPeer == null) {
+                try {
+                    rpcPeer = new TcpClient("localhost", rpcPort, this).getPeer();
+                } catch (IOException e) {
+                    if (System.nanoTime() > deadline || !process.isAlive()) {
+                        throw new IOException("Adapter %d did not start".formatted(id), e);
+                    }
+                    Thread.sleep(100);
+                }
+            }
+
+            rpc("setIceServers", List.of(Map.of("urls", List.of("stun:127.0.0.1:" + bench.stunPort))));
+
+            // The GPGNet server is started before the RPC server
+            gpgnetSocket = new Socket("127.0.0.1", gpgnetPort);
+            gameOut = new FaDataOutputStream(gpgnetSocket.getOutputStream());
+            Thread.ofVirtual().name("gpgnet" + id).start(this::gpgnetListener);
+            Thread.ofVirtual().name("lobby" + id).start(this::lobbyListener);
+            Thread.ofVirtual().name("echo" + id).start(this::echoSender);
+
+            gameOut.writeMessage("GameState", "Idle");
+            gameOut.flush();
+        }
+
+        void rpc(String method, Object... args) {
+            rpcPeer.sendAsyncRequest(method, Arrays.asList(args), null, false);
+        }
+
+        public void onConnectionStateChanged(String newState) {}
+
+        public void onGpgNetMessageReceived(String header, List<Object> chunks) {}
+
+        public void onIceMsg(long localPlayerId, long remotePlayerId, Object message) {
+            Player remote = bench.players.get((int) remotePlayerId);
+            if (remote != null) {
+                remote.rpc("iceMsg", localPlayerId, bench.relayCandidates(remote.id, message));
+            }
+        }
+
+        public void onIceConnectionStateChanged(long localPlayerId, long remotePlayerId, String state) {}
+
+        public void onConnected(long localPlayerId, long remotePlayerId, boolean connected) {
+            if (connected && iceConnected.putIfAbsent((int) remotePlayerId, true) == null) {
+                bench.onIceConnected();
+            } else if (!connected) {
+                log.warn("Player {} lost the connection to {}", localPlayerId, remotePlayerId);
+            }
+        }
+
+        private void gpgnetListener() {
+            try {
+                FaDataInputStream gameIn = new FaDataInputStream(gpgnetSocket.getInputStream());
+                while (running) {
+                    String command = gameIn.readString();
+                    List<Object> args = gameIn.readChunks();
+                    switch (command) {
+                        case "CreateLobby" -> {
+                            gameOut.writeMessage("GameState", "Lobby");
+                            gameOut.flush();
+                            bench.lobbies.countDown();
+                        }
+                        case "JoinGame", "ConnectToPeer" -> {
+                            String[] address = ((String) args.get(0)).split(":");
+                            int remoteId = (Integer) args.get(2);
+                            echoStats.putIfAbsent(remoteId, new EchoStats());
+                            peerAddresses.put(
+                                    remoteId, new InetSocketAddress(address[0], Integer.parseInt(address[1])));
+                        }
+                        case "DisconnectFromPeer" -> peerAddresses.remove((Integer) args.get(0));
+                        default -> {}
+                    }
+                }
+            } catch (IOException e) {
+                if (running) {
+                    log.error("GPGNet connection of player {} lost", id, e);
+                }
+            }
+        }
+
+        /**
+         * Sends echo requests like the echoThread of the test client, before the peer is connected they are dropped by
+         * the adapter
+         */
+        private void echoSender() {
+            byte[] data = new byte[ECHO_DATA_SIZE];
+            while (running) {
+                peerAddresses.forEach((remoteId, address) -> {
+                    EchoStats stats = echoStats.get(remoteId);
+                    random.nextBytes(data);
+                    try {
+                        ByteArrayOutputStream packet = new ByteArrayOutputStream();
+                        DataOutputStream packetOut = new DataOutputStream(packet);
+                        packetOut.writeUTF(ECHO_REQ);
+                        packetOut.writeInt(id); // src
+                        packetOut.writeInt(remoteId); // target
+                        packetOut.writeInt(stats.sent.getAndIncrement());
+                        packetOut.writeLong(System.nanoTime());
+                        packetOut.writeInt(data.length);
+                        packetOut.write(data);
+                        lobbySocket.send(new DatagramPacket(packet.toByteArray(), packet.size(), address));
+                    } catch (IOException e) {
+                        if (running) {
+                            log.warn("Player {} failed to send echo to {}", id, remoteId, e);
+                        }
+                    }
+                });
+
+                try {
+                    Thread.sleep(ECHO_INTERVAL);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        private void lobbyListener() {
+            byte[] buffer = new byte[4096];
+            while (running) {
+                try {
+                    DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+                    lobbySocket.receive(packet);
+                    DataInputStream packetIn =
+                            new DataInputStream(new ByteArrayInputStream(packet.getData(), 0, packet.getLength()));
+                    String command = packetIn.readUTF();
+                    int remoteId = packetIn.readInt();
+                    packetIn.readInt(); // target, always this player
+                    int echoId = packetIn.readInt();
+                    long echoTime = packetIn.readLong();
+                    EchoStats stats = echoStats.get(remoteId);
+                    if (stats != null) {
+                        stats.onPacket(System.nanoTime());
+                    }
+
+                    if (command.equals(ECHO_REQ)) {
+                        // Answered to the source, the socket the adapter forwards this peer from. The response has
+                        // the same layout as the request, so the payload is copied from the same offset
+                        ByteArrayOutputStream response = new ByteArrayOutputStream();
+                        DataOutputStream responseOut = new DataOutputStream(response);
+                        responseOut.writeUTF(ECHO_RES);
+                        responseOut.writeInt(id);
+                        responseOut.writeInt(remoteId);
+                        responseOut.writeInt(echoId);
+                        responseOut.writeLong(echoTime);
+                        responseOut.write(packet.getData(), response.size(), packet.getLength() - response.size());
+                        lobbySocket.send(
+                                new DatagramPacket(response.toByteArray(), response.size(), packet.getSocketAddress()));
+                    } else if (command.equals(ECHO_RES)) {
+                        if (stats != null && stats.onResponse(System.nanoTime() - echoTime)) {
+                            bench.onEchoConnected();
+                        }
+                    }
+                } catch (IOException e) {
+                    if (running) {
+                        log.warn("Player {} received an invalid lobby packet", id, e);
+                    }
+                }
+            }
+        }
+
+        void startMeasurement() {
+            echoStats.values().forEach(EchoStats::reset);
+            measurementStartCpuMillis = getCpuMillis();
+            connectCpuMillis = measurementStartCpuMillis;
+        }
+
+        double getCpuMillisSinceMeasurementStart() {
+            return getCpuMillis() - measurementStartCpuMillis;
+        }
+
+        private double getCpuMillis() {
+            return process.toHandle()
+                    .info()
+                    .totalCpuDuration()
+                    .map(cpu -> cpu.toNanos() / 1e6)
+                    .orElse(Double.NaN);
+        }
+
+        void close() {
+            running = false;
+            lobbySocket.close();
+            try {
+                if (gpgnetSocket != null) {
+                    gpgnetSocket.close();
+                }
+            } catch (IOException e) {
+                log.debug("Failed to close GPGNet connection of player {}", id, e);
+            }
+
+            if (process != null) {
+                process.destroy();
+                try {
+                    if (!process.waitFor(5, TimeUnit.SECONDS)) {
+                        process.destroyForcibly();
+                    }
+                } catch (InterruptedException e) {
+                    process.destroyForcibly();
+                }
+                processes.remove(process);
+            }
+        }
+    }
+
+    /**
+     * Echo requests sent to, round trip times measured for and stalls of the packets received from one peer
+     */
+    private static class EchoStats {
+
+        private final AtomicInteger sent = new AtomicInteger();
+        private final List<Long> rtts = new ArrayList<>();
+        private boolean responded = false;
+        private long lastPacket = 0;
+        private int stalls = 0;
+        private long longestStall = 0;
+
+        /**
+         * Any packet of the peer, request or response
+         */
+        synchronized void onPacket(long now) {
+            long gap = now - lastPacket;
+            if (lastPacket != 0 && gap > STALL_GAP) {
+                stalls++;
+                longestStall = Math.max(longestStall, gap);
+            }
+            lastPacket = now;
+        }
+
+        /**
+         * @return whether this is the first response of the peer
+         */
+        synchronized boolean onResponse(long rttNanos) {
+            rtts.add(rttNanos);
+            boolean first = !responded;
+            responded = true;
+            return first;
+        }
+
+        synchronized void reset() {
+            rtts.clear();
+            sent.set(0);
+            stalls = 0;
+            longestStall = 0;
+        }
+
+        synchronized List<Long> getRtts() {
+            return new ArrayList<>(rtts);
+        }
+
+        synchronized int getStalls() {
+            return stalls;
+        }
+
+        synchronized long getLongestStall() {
+            return longestStall;
+        }
+    }
+
+    /**
+     * Forwards the ICE traffic to one candidate and drops a share of the packets in each direction
+     * Every source gets its own socket towards the candidate, so the candidate sees one address per source like behind
+     * a NAT and its answers can be sent back to the right source.
+     */
+    private static class LossyRelay implements AutoCloseable {
+
+        private final InetSocketAddress target;
+        private final double loss;
+        private final DatagramSocket socket;
+        private final Map<SocketAddress, DatagramSocket> sourceSockets = new ConcurrentHashMap<>();
+
+        LossyRelay(InetSocketAddress target, double loss) {
+            this.target = target;
+            this.loss = loss;
+            try {
+                // Any address, the candidate keeps its IP and only the port changes
+                socket = new DatagramSocket(0);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            Thread.ofVirtual().name("relay" + socket.getLocalPort()).start(() -> forward(socket, null));
+        }
+
+        int getPort() {
+            return socket.getLocalPort();
+        }
+
+        /**
+         * @param source the source the packets received on the socket are returned to, null for the relay socket
+         */
+        private void forward(DatagramSocket receiveSocket, SocketAddress source) {
+            byte[] buffer = new byte[2048];
+            while (!receiveSocket.isClosed()) {
+                try {
+                    DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+                    receiveSocket.receive(packet);
+                    if (ThreadLocalRandom.current().nextDouble() < loss) {
+                        continue;
+                    }
+
+                    if (source == null) {
+                        DatagramSocket sourceSocket =
+                                sourceSockets.computeIfAbsent(packet.getSocketAddress(), this::openSourceSocket);
+                        packet.setSocketAddress(target);
+                        sourceSocket.send(packet);
+                    } else {
+                        packet.setSocketAddress(source);
+                        socket.send(packet);
+                    }
+                } catch (IOException | UncheckedIOException e) {
+                    if (!receiveSocket.isClosed()) {
+                        log.debug("Relay to {} failed to forward", target, e);
+                    }
+                }
+            }
+        }
+
+        private DatagramSocket openSourceSocket(SocketAddress source) {
+            try {
+                DatagramSocket sourceSocket = new DatagramSocket(0);
+                Thread.ofVirtual().name("relaySource").start(() -> forward(sourceSocket, source));
+                return sourceSocket;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void close() {
+            socket.close();
+            sourceSockets.values().forEach(DatagramSocket::close);
+        }
+    }
+
+    /**
+     * Answers STUN binding requests (RFC 5389) with the source address of the request, standing in for coturn
+     */
+    private static class StunServer implements AutoCloseable {
+
+        private static final int MAGIC_COOKIE = 0x2112A442;
+        private static final short BINDING_REQUEST = 0x0001;
+        private static final short BINDING_RESPONSE = 0x0101;
+        private static final short XOR_MAPPED_ADDRESS = 0x0020;
+
+        private final DatagramSocket socket;
+
+        StunServer() throws IOException {
+            socket = new DatagramSocket(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0));
+            Thread.ofVirtual().name("stunServer").start(this::listener);
+        }
+
+        int getPort() {
+            return socket.getLocalPort();
+        }
+
+        private void listener() {
+            byte[] buffer = new byte[1500];
+            while (!socket.isClosed()) {
+                try {
+                    DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+                    socket.receive(packet);
+                    ByteBuffer request = ByteBuffer.wrap(packet.getData(), 0, packet.getLength());
+                    if (packet.getLength() < 20
+                            || request.getShort(0) != BINDING_REQUEST
+                            || request.getInt(4) != MAGIC_COOKIE) {
+                        continue;
+                    }
+
+                    byte[] address = packet.getAddress().getAddress();
+                    ByteBuffer response = ByteBuffer.allocate(32);
+                    response.putShort(BINDING_RESPONSE);
+                    response.putShort((short) 12);
+                    response.put(packet.getData(), 4, 16); // magic cookie and transaction id
+                    response.putShort(XOR_MAPPED_ADDRESS);
+                    response.putShort((short) 8);
+                    response.put((byte) 0);
+                    response.put((byte) 0x01); // IPv4, the server only listens on 127.0.0.1
+                    response.putShort((short) (packet.getPort() ^ (MAGIC_COOKIE >>> 16)));
+                    response.putInt(ByteBuffer.wrap(address).getInt() ^ MAGIC_COOKIE);
+                    socket.send(new DatagramPacket(response.array(), response.position(), packet.getSocketAddress()));
+                } catch (IOException e) {
+                    if (!socket.isClosed()) {
+                        log.warn("STUN stand-in failed to answer", e);
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            socket.close();
+        }
+    }
+
+    private static double average(List<Long> values) {
+        return values.stream().mapToLong(Long::longValue).average().orElse(Double.NaN);
+    }
+
+    private static double percentile(List<Long> values, double percentile) {
+        if (values.isEmpty()) {
+            return Double.NaN;
+        }
+
+        long[] sorted = values.stream().mapToLong(Long::longValue).sorted().toArray();
+        return sorted[(int) Math.ceil(percentile * sorted.length) - 1];
+    }
+
+    private static String formatMillis(double nanos) {
+        return "%5.2f ms".formatted(nanos / 1e6);
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}